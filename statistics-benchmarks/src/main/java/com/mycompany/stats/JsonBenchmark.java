@@ -0,0 +1,59 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.mycompany.stats.StatisticsAggregatorBenchmark.NOW;
+
+// Jackson (de)serialization of the request and response bodies of the single transaction and statistics endpoints.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Transaction transaction = new Transaction(NOW, 123.45);
+    private final Statistics statistics = new Statistics().addStatistics(1000, 123450.0, 0.5, 999.5);
+    private byte[] transactionJson;
+    private byte[] statisticsJson;
+
+    @Setup
+    public void setup() throws IOException {
+        transactionJson = objectMapper.writeValueAsBytes(transaction);
+        statisticsJson = objectMapper.writeValueAsBytes(statistics);
+    }
+
+    @Benchmark
+    public Transaction readTransaction() throws IOException {
+        return objectMapper.readValue(transactionJson, Transaction.class);
+    }
+
+    @Benchmark
+    public byte[] writeTransaction() throws IOException {
+        return objectMapper.writeValueAsBytes(transaction);
+    }
+
+    @Benchmark
+    public Statistics readStatistics() throws IOException {
+        return objectMapper.readValue(statisticsJson, Statistics.class);
+    }
+
+    @Benchmark
+    public byte[] writeStatistics() throws IOException {
+        return objectMapper.writeValueAsBytes(statistics);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mycompany.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Adding transactions while the clock stands still, so the window never moves: every thread either hits the same
+// second or spreads its transactions over the whole window.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsAggregatorBenchmark {
+    static final long NOW = 1515324450000L;
+
+    @Param({"same", "different"})
+    private String seconds;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        StatisticsAggregator.initialize(NOW);
+    }
+
+    @State(Scope.Thread)
+    public static class Transactions {
+        private final Transaction[] transactions = new Transaction[1024];
+        private int next;
+
+        @Setup
+        public void setup(StatisticsAggregatorBenchmark benchmark) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < transactions.length; i++) {
+                long timestamp = "same".equals(benchmark.seconds) ? NOW : NOW - random.nextLong(60000);
+                transactions[i] = new Transaction(timestamp, random.nextDouble(1000.0));
+            }
+        }
+
+        Transaction next() {
+            return transactions[next++ & (transactions.length - 1)];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean addTransaction(Transactions transactions) {
+        return StatisticsAggregator.addTransaction(transactions.next(), NOW);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean addTransaction4Threads(Transactions transactions) {
+        return StatisticsAggregator.addTransaction(transactions.next(), NOW);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean addTransactionMaxThreads(Transactions transactions) {
+        return StatisticsAggregator.addTransaction(transactions.next(), NOW);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mycompany.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.mycompany.stats.StatisticsAggregatorBenchmark.NOW;
+
+// Reading the statistics of a full window, alone and next to writers.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsReadBenchmark {
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private final Statistics statistics = new Statistics();
+    private final Transaction transaction = new Transaction(NOW - 30000, 100.00);
+
+    @Setup
+    public void setup() {
+        StatisticsAggregator.initialize(NOW);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100000; i++) {
+            StatisticsAggregator.addTransaction(new Transaction(NOW - random.nextLong(60000),
+                    random.nextDouble(1000.0)), NOW);
+        }
+    }
+
+    @Benchmark
+    public Statistics getAggregatedStatistics() {
+        return StatisticsAggregator.getAggregatedStatistics(NOW);
+    }
+
+    @Benchmark
+    public Statistics getAggregatedStatisticsInto() {
+        return StatisticsAggregator.getAggregatedStatistics(NOW, statistics);
+    }
+
+    @Benchmark
+    public Statistics getAggregatedStatisticsWithPercentiles() {
+        return StatisticsAggregator.getAggregatedStatistics(NOW, PERCENTILES);
+    }
+
+    @Benchmark
+    public Statistics getWindowStatistics() {
+        return StatisticsAggregator.getAggregatedStatistics(NOW, 10000, null);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Statistics read() {
+        return StatisticsAggregator.getAggregatedStatistics(NOW);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public boolean write() {
+        return StatisticsAggregator.addTransaction(transaction, NOW);
+    }
+}
@@ -0,0 +1,47 @@
+package com.mycompany.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.mycompany.stats.StatisticsAggregatorBenchmark.NOW;
+
+// Adding a transaction after the clock moved on by the given gap, which expires part (or all, from 60 seconds on) of
+// the window of the stripe before the transaction is added. This is what resetting the statistics array used to do.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsRotationBenchmark {
+
+    @Param({"1", "30", "120"})
+    private int gapInSecs;
+
+    private long currentTimestampInMillis;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        StatisticsAggregator.initialize(NOW);
+        currentTimestampInMillis = NOW;
+    }
+
+    @Benchmark
+    public boolean addTransactionAfterIdleGap() {
+        currentTimestampInMillis += gapInSecs * 1000L;
+        return StatisticsAggregator.addTransaction(new Transaction(currentTimestampInMillis, 100.00),
+                currentTimestampInMillis);
+    }
+}
@@ -0,0 +1,188 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives POST /api/v1/transactions and GET /api/v1/statistics of an instance, then checks its final statistics
+// against the transactions it acknowledged (LoadOracle). In open loop (a rate set), request i is scheduled at
+// start + i / rate whatever the previous answers, and its latency is measured from that time: a stalled instance
+// delays the requests queued behind it, and that wait is part of their latency instead of being left out (coordinated
+// omission). Every connection picks the next scheduled request as soon as it is free, so up to `connections` requests
+// are in flight.
+public final class LoadGenerator {
+    private static final String TRANSACTIONS = "/api/v1/transactions";
+    private static final String STATISTICS = "/api/v1/statistics";
+    private static final int TIMEOUT_MILLIS = 10000;
+    // The last writes may still be on their way through the pipeline of the instance, if enabled.
+    private static final int VERIFY_ATTEMPTS = 10;
+    private static final long VERIFY_RETRY_MILLIS = 200;
+
+    private final LoadOptions options;
+    private final String url;
+
+    LoadGenerator(LoadOptions options, String url) {
+        this.options = options;
+        this.url = url;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        StatisticsHttpServer server = null;
+        String url = options.getUrl();
+        if (options.isStart()) {
+            StatisticsAggregator.initialize(new StatisticsWindow(options.getBucketMillis(), options.getBuckets()),
+                    System.currentTimeMillis());
+            // The in-process server answers without waiting for delayed ACKs, like StatisticsHttpServer.main.
+            StatisticsHttpServer.enableNoDelay();
+            server = new StatisticsHttpServer(0, Runtime.getRuntime().availableProcessors() * 2,
+                    new StatisticsProperties.Keyed().toMaxKeys(options.getBuckets()));
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+        LoadReport report;
+        try {
+            report = new LoadGenerator(options, url).run();
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        report.print(System.out);
+        System.exit(report.isVerified() ? 0 : 1);
+    }
+
+    LoadReport run() throws InterruptedException, IOException {
+        // The JDK keeps at most 5 idle connections per host unless told otherwise, and sends a POST again when its
+        // connection turns out to be stale, which would add a transaction twice. Both are read once, on first use.
+        System.setProperty("http.maxConnections", String.valueOf(options.getConnections()));
+        System.setProperty("sun.net.http.retryPost", "false");
+        LoadReport report = new LoadReport();
+        LoadOracle oracle = new LoadOracle(options.getBucketMillis(), options.getBuckets());
+        AtomicLong sequence = new AtomicLong();
+        ExecutorService connections = Executors.newFixedThreadPool(options.getConnections());
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(options.getDurationSecs());
+        for (int i = 0; i < options.getConnections(); i++) {
+            LoadOracle.Recorder recorder = oracle.newRecorder();
+            connections.execute(() -> connect(report, recorder, sequence, startNanos, endNanos));
+        }
+        connections.shutdown();
+        connections.awaitTermination(options.getDurationSecs() + 2 * TIMEOUT_MILLIS / 1000, TimeUnit.SECONDS);
+        report.setElapsedNanos(System.nanoTime() - startNanos);
+        if (options.isVerify()) {
+            verify(report, oracle);
+        }
+        return report;
+    }
+
+    private void connect(LoadReport report, LoadOracle.Recorder recorder, AtomicLong sequence, long startNanos,
+                         long endNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long maxAmountInCents = Math.round(options.getMaxAmount() * 100);
+        while (true) {
+            long scheduledNanos;
+            if (options.getRate() > 0) {
+                scheduledNanos = startNanos + (long) (sequence.getAndIncrement() * 1e9 / options.getRate());
+                if (scheduledNanos >= endNanos) {
+                    return;
+                }
+                for (long delay = scheduledNanos - System.nanoTime(); delay > 0;
+                     delay = scheduledNanos - System.nanoTime()) {
+                    LockSupport.parkNanos(delay);
+                }
+            } else {
+                scheduledNanos = System.nanoTime();
+                if (scheduledNanos >= endNanos) {
+                    return;
+                }
+            }
+            if (random.nextDouble() < options.getReadRatio()) {
+                try {
+                    int status = send("GET", STATISTICS, null, null);
+                    report.getReads().record(status, System.nanoTime() - scheduledNanos);
+                } catch (IOException e) {
+                    report.getReads().error();
+                }
+            } else {
+                long timestamp = System.currentTimeMillis() - options.getSkew().nextMillis(options.getSkewMillis());
+                long amountInCents = 1 + random.nextLong(maxAmountInCents);
+                String body = "{\"timestamp\":" + timestamp + ",\"amount\":"
+                        + BigDecimal.valueOf(amountInCents, 2).toPlainString() + "}";
+                try {
+                    int status = send("POST", TRANSACTIONS, body.getBytes(StandardCharsets.UTF_8), null);
+                    report.getWrites().record(status, System.nanoTime() - scheduledNanos);
+                    // 202 in pipeline mode.
+                    if (status == 200 || status == 202) {
+                        recorder.record(timestamp, amountInCents);
+                    }
+                } catch (IOException e) {
+                    report.getWrites().error();
+                }
+            }
+        }
+    }
+
+    // The statistics must be read within a single bucket, so the window of the instance is the one of the oracle.
+    private void verify(LoadReport report, LoadOracle oracle) throws InterruptedException, IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Statistics expected = oracle.getExpectedStatistics(System.currentTimeMillis());
+        Statistics actual = null;
+        for (int attempt = 0; attempt < VERIFY_ATTEMPTS; attempt++) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            long before = System.currentTimeMillis();
+            int status = send("GET", STATISTICS, null, body);
+            long after = System.currentTimeMillis();
+            if (status == 200 && before / options.getBucketMillis() == after / options.getBucketMillis()) {
+                expected = oracle.getExpectedStatistics(before);
+                actual = objectMapper.readValue(body.toByteArray(), Statistics.class);
+                if (oracle.matches(expected, actual)) {
+                    report.setVerification(expected, actual, true);
+                    return;
+                }
+            }
+            Thread.sleep(VERIFY_RETRY_MILLIS);
+        }
+        report.setVerification(expected, actual, false);
+    }
+
+    // Returns the status, the body being written to the given stream if any and discarded otherwise. The connection
+    // is handed back to the JDK's keep-alive cache once the body is read.
+    private int send(String method, String path, byte[] body, OutputStream response) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            for (int read; in != null && (read = in.read(buffer)) >= 0; ) {
+                if (response != null) {
+                    response.write(buffer, 0, read);
+                }
+            }
+        }
+        return status;
+    }
+}
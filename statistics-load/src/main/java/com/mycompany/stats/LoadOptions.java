@@ -0,0 +1,66 @@
+package com.mycompany.stats;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Settings of a LoadGenerator run, read from --name=value arguments.
+@Data
+public class LoadOptions {
+    // Base URL of the instance under load, unless `start` is set.
+    private String url = "http://localhost:8080";
+    // Starts a lightweight instance (StatisticsHttpServer) in this JVM on a free port instead.
+    private boolean start;
+    // Requests per second, reads and writes together, on a fixed schedule. 0 runs a closed loop instead: every
+    // connection sends its next request as soon as the previous one is answered.
+    private double rate = 1000;
+    private long durationSecs = 10;
+    // Requests in flight at most, each on its own connection.
+    private int connections = 32;
+    // Share of the requests being GET /statistics, the others being POST /transactions.
+    private double readRatio = 0.1;
+    private TimestampSkew skew = TimestampSkew.UNIFORM;
+    private long skewMillis = 30000;
+    // Amounts are drawn uniformly between 0.01 and this, with 2 decimals.
+    private double maxAmount = 1000.00;
+    // Window of the instance under load, for the oracle.
+    private long bucketMillis = 1000;
+    private int buckets = 60;
+    // Checks the final statistics against the transactions acknowledged, which requires an instance nobody else
+    // writes to.
+    private boolean verify = true;
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (arg.startsWith("--") && separator > 2) {
+                arguments.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        LoadOptions options = new LoadOptions();
+        options.setUrl(arguments.getOrDefault("url", options.getUrl()));
+        options.setStart(Boolean.parseBoolean(arguments.getOrDefault("start", String.valueOf(options.isStart()))));
+        options.setRate(Double.parseDouble(arguments.getOrDefault("rate", String.valueOf(options.getRate()))));
+        options.setDurationSecs(Long.parseLong(arguments.getOrDefault("duration-secs",
+                String.valueOf(options.getDurationSecs()))));
+        options.setConnections(Integer.parseInt(arguments.getOrDefault("connections",
+                String.valueOf(options.getConnections()))));
+        options.setReadRatio(Double.parseDouble(arguments.getOrDefault("read-ratio",
+                String.valueOf(options.getReadRatio()))));
+        options.setSkew(TimestampSkew.valueOf(arguments.getOrDefault("skew", options.getSkew().name())
+                .toUpperCase(Locale.ROOT)));
+        options.setSkewMillis(Long.parseLong(arguments.getOrDefault("skew-millis",
+                String.valueOf(options.getSkewMillis()))));
+        options.setMaxAmount(Double.parseDouble(arguments.getOrDefault("max-amount",
+                String.valueOf(options.getMaxAmount()))));
+        options.setBucketMillis(Long.parseLong(arguments.getOrDefault("bucket-millis",
+                String.valueOf(options.getBucketMillis()))));
+        options.setBuckets(Integer.parseInt(arguments.getOrDefault("buckets", String.valueOf(options.getBuckets()))));
+        options.setVerify(Boolean.parseBoolean(arguments.getOrDefault("verify",
+                String.valueOf(options.isVerify()))));
+        return options;
+    }
+}
@@ -0,0 +1,104 @@
+package com.mycompany.stats;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Keeps every transaction acknowledged by the instance under load, in cents, and computes the statistics the instance
+// should return out of them: exact sums over the transactions whose bucket is inside the window at a given time,
+// computed on their own without any of the aggregator's running totals.
+final class LoadOracle {
+    // The instance adds up doubles and subtracts the buckets leaving its window, so its sum may drift from the exact
+    // one by a few ulps of every amount ever added.
+    private static final double SUM_TOLERANCE = 1e-9;
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+
+    LoadOracle(long bucketMillis, int buckets) {
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+    }
+
+    // Every connection records into its own recorder, so recording never contends.
+    Recorder newRecorder() {
+        Recorder recorder = new Recorder();
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    long getTransactions() {
+        long transactions = 0;
+        for (Recorder recorder : recorders) {
+            transactions += recorder.size;
+        }
+        return transactions;
+    }
+
+    // Must only be called once the recorders are done.
+    Statistics getExpectedStatistics(long currentTimestampInMillis) {
+        long currentTick = currentTimestampInMillis / bucketMillis;
+        long count = 0;
+        long sumInCents = 0;
+        long minInCents = Long.MAX_VALUE;
+        long maxInCents = Long.MIN_VALUE;
+        for (Recorder recorder : recorders) {
+            for (int i = 0; i < recorder.size; i++) {
+                long tick = recorder.timestamps[i] / bucketMillis;
+                if (tick <= currentTick && tick > currentTick - buckets) {
+                    long cents = recorder.amountsInCents[i];
+                    count++;
+                    sumInCents += cents;
+                    minInCents = Math.min(minInCents, cents);
+                    maxInCents = Math.max(maxInCents, cents);
+                }
+            }
+        }
+        Statistics statistics = new Statistics();
+        if (count > 0) {
+            statistics.addStatistics(count, sumInCents / 100.0, sumInCents, minInCents / 100.0, maxInCents / 100.0);
+        }
+        return statistics;
+    }
+
+    // Counts and extremes must be the same, sums and averages within the drift allowed.
+    boolean matches(Statistics expected, Statistics actual) {
+        if (expected.getCount() != actual.getCount()) {
+            return false;
+        }
+        if (expected.isEmpty()) {
+            return true;
+        }
+        double tolerance = SUM_TOLERANCE * Math.max(1.0, getTotalInCents() / 100.0);
+        return expected.getMin() == actual.getMin() && expected.getMax() == actual.getMax()
+                && Math.abs(expected.getSum() - actual.getSum()) <= tolerance
+                && Math.abs(expected.getAverage() - actual.getAverage()) <= tolerance;
+    }
+
+    private long getTotalInCents() {
+        long total = 0;
+        for (Recorder recorder : recorders) {
+            for (int i = 0; i < recorder.size; i++) {
+                total += Math.abs(recorder.amountsInCents[i]);
+            }
+        }
+        return total;
+    }
+
+    static final class Recorder {
+        private long[] timestamps = new long[1024];
+        private long[] amountsInCents = new long[1024];
+        private int size;
+
+        void record(long timestamp, long amountInCents) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                amountsInCents = Arrays.copyOf(amountsInCents, size * 2);
+            }
+            timestamps[size] = timestamp;
+            amountsInCents[size] = amountInCents;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mycompany.stats;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Outcome of a LoadGenerator run: throughput, latencies and status codes per endpoint, and the final statistics
+// checked against the oracle.
+final class LoadReport {
+    private final Endpoint writes = new Endpoint("POST /api/v1/transactions");
+    private final Endpoint reads = new Endpoint("GET /api/v1/statistics");
+    private long elapsedNanos;
+    // Only set once verified.
+    private Statistics expected;
+    private Statistics actual;
+    private boolean verified;
+
+    Endpoint getWrites() {
+        return writes;
+    }
+
+    Endpoint getReads() {
+        return reads;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    void setVerification(Statistics expected, Statistics actual, boolean verified) {
+        this.expected = expected;
+        this.actual = actual;
+        this.verified = verified;
+    }
+
+    // Also true when the run was not verified.
+    boolean isVerified() {
+        return expected == null || verified;
+    }
+
+    Statistics getExpected() {
+        return expected;
+    }
+
+    Statistics getActual() {
+        return actual;
+    }
+
+    void print(PrintStream out) {
+        double elapsedSecs = elapsedNanos / 1e9;
+        for (Endpoint endpoint : new Endpoint[]{writes, reads}) {
+            long requests = endpoint.latencies.getCount();
+            out.printf("%s: %d requests in %.1fs, %.1f/s%n", endpoint.name, requests, elapsedSecs,
+                    requests / elapsedSecs);
+            out.printf("  latency p50 %.3fms, p99 %.3fms, p99.9 %.3fms, max %.3fms%n",
+                    millis(endpoint.latencies.getPercentileNanos(50)), millis(endpoint.latencies.getPercentileNanos(99)),
+                    millis(endpoint.latencies.getPercentileNanos(99.9)), millis(endpoint.latencies.getMaxNanos()));
+            StringBuilder statuses = new StringBuilder("  status");
+            for (Map.Entry<Integer, LongAdder> status : endpoint.statuses.entrySet()) {
+                statuses.append(' ').append(status.getKey()).append(": ").append(status.getValue().sum()).append(',');
+            }
+            out.println(statuses.append(" errors: ").append(endpoint.errors.sum()));
+        }
+        if (expected == null) {
+            out.println("oracle: not verified");
+        } else {
+            out.printf("oracle: expected %s%n", format(expected));
+            out.printf("        got      %s%n", actual != null ? format(actual) : "no answer");
+            out.println(verified ? "oracle: OK" : "oracle: MISMATCH");
+        }
+    }
+
+    private static String format(Statistics statistics) {
+        return String.format("count %d, sum %.6f, avg %.6f, min %.2f, max %.2f", statistics.getCount(),
+                statistics.getSum(), statistics.getAverage(), statistics.isEmpty() ? 0.0 : statistics.getMin(),
+                statistics.isEmpty() ? 0.0 : statistics.getMax());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    static final class Endpoint {
+        private final String name;
+        // Latencies are measured from the time a request was scheduled, not sent, see LoadGenerator.
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentSkipListMap<>();
+        private final LongAdder errors = new LongAdder();
+
+        private Endpoint(String name) {
+            this.name = name;
+        }
+
+        void record(int status, long latencyNanos) {
+            latencies.record(latencyNanos);
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        // No answer: a connection failure or a timeout.
+        void error() {
+            errors.increment();
+        }
+
+        long getRequests() {
+            return latencies.getCount();
+        }
+
+        long getStatus(int status) {
+            LongAdder count = statuses.get(status);
+            return count != null ? count.sum() : 0;
+        }
+
+        long getErrors() {
+            return errors.sum();
+        }
+
+        LatencyHistogram getLatencies() {
+            return latencies;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mycompany.stats;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// How far in the past the timestamp of a generated transaction is, scaled by --skew-millis. Skews beyond the window
+// exercise the transactions rejected as too old.
+public enum TimestampSkew {
+    NONE {
+        @Override
+        long nextMillis(long scaleMillis) {
+            return 0;
+        }
+    },
+    // Between 0 and scaleMillis.
+    UNIFORM {
+        @Override
+        long nextMillis(long scaleMillis) {
+            return ThreadLocalRandom.current().nextLong(scaleMillis + 1);
+        }
+    },
+    // Mostly recent with a long tail, scaleMillis being the mean.
+    EXPONENTIAL {
+        @Override
+        long nextMillis(long scaleMillis) {
+            return (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * scaleMillis);
+        }
+    };
+
+    abstract long nextMillis(long scaleMillis);
+}
@@ -0,0 +1,50 @@
+package com.mycompany.stats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadGeneratorTest {
+
+    private StatisticsHttpServer server;
+
+    @Before
+    public void setup() throws Exception {
+        StatisticsAggregator.initialize(StatisticsWindow.DEFAULT, System.currentTimeMillis());
+        server = new StatisticsHttpServer(0, 4, 1024);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void checkOpenLoopRunIsVerifiedAgainstTheOracle() throws Exception {
+        LoadOptions options = LoadOptions.parse(new String[]{"--rate=200", "--duration-secs=2", "--connections=4",
+                "--read-ratio=0.2", "--skew=exponential", "--skew-millis=30000"});
+        LoadReport report = new LoadGenerator(options, "http://localhost:" + server.getPort()).run();
+
+        assertThat(report.getWrites().getRequests() + report.getReads().getRequests()).isBetween(380L, 400L);
+        assertThat(report.getWrites().getErrors() + report.getReads().getErrors()).isEqualTo(0);
+        assertThat(report.getReads().getStatus(200)).isEqualTo(report.getReads().getRequests());
+        assertThat(report.getWrites().getStatus(200) + report.getWrites().getStatus(204))
+                .isEqualTo(report.getWrites().getRequests());
+        assertThat(report.getExpected().getCount()).isPositive();
+        assertThat(report.isVerified()).isTrue();
+    }
+
+    @Test
+    public void checkClosedLoopRunWithoutVerification() throws Exception {
+        LoadOptions options = LoadOptions.parse(new String[]{"--rate=0", "--duration-secs=1", "--connections=2",
+                "--skew=none", "--verify=false"});
+        LoadReport report = new LoadGenerator(options, "http://localhost:" + server.getPort()).run();
+
+        assertThat(report.getWrites().getStatus(200)).isPositive();
+        assertThat(report.getExpected()).isNull();
+        assertThat(report.isVerified()).isTrue();
+    }
+}
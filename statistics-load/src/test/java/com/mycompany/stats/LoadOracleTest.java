@@ -0,0 +1,41 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadOracleTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    private final LoadOracle oracle = new LoadOracle(1000, 60);
+
+    @Test
+    public void checkOnlyTransactionsInsideTheWindowAreExpected() {
+        LoadOracle.Recorder first = oracle.newRecorder();
+        LoadOracle.Recorder second = oracle.newRecorder();
+        first.record(MOCK_TIME_STAMP_IN_MILLIS - 60000, 100);
+        first.record(MOCK_TIME_STAMP_IN_MILLIS - 59000, 10);
+        second.record(MOCK_TIME_STAMP_IN_MILLIS, 20);
+        second.record(MOCK_TIME_STAMP_IN_MILLIS + 1000, 30);
+
+        Statistics expected = oracle.getExpectedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 999);
+        assertThat(oracle.getTransactions()).isEqualTo(4);
+        assertThat(expected.getCount()).isEqualTo(2);
+        assertThat(expected.getSum()).isEqualTo(0.3);
+        assertThat(expected.getMin()).isEqualTo(0.1);
+        assertThat(expected.getMax()).isEqualTo(0.2);
+        assertThat(oracle.getExpectedStatistics(MOCK_TIME_STAMP_IN_MILLIS - 120000).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void checkSumsMayOnlyDriftSlightly() {
+        oracle.newRecorder().record(MOCK_TIME_STAMP_IN_MILLIS, 10);
+        Statistics expected = oracle.getExpectedStatistics(MOCK_TIME_STAMP_IN_MILLIS);
+
+        assertThat(oracle.matches(expected, new Statistics().addStatistics(1, 0.1 + 1e-12, 0.1, 0.1))).isTrue();
+        assertThat(oracle.matches(expected, new Statistics().addStatistics(1, 0.11, 0.1, 0.1))).isFalse();
+        assertThat(oracle.matches(expected, new Statistics().addStatistics(1, 0.1, 0.1, 0.2))).isFalse();
+        assertThat(oracle.matches(expected, new Statistics())).isFalse();
+    }
+}
@@ -0,0 +1,88 @@
+package com.mycompany.stats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+
+// Limit on the number of requests in flight which adapts to their latency, AIMD style like a TCP congestion window:
+// every request completing within the target latency while the limit is in use grows it by 1 / limit (about one per
+// round of limit requests), a request over the target shrinks it by the backoff ratio. A request is admitted with the
+// epoch of the limit (the number of decreases so far) as its ticket, and only the first slow request of an epoch
+// decreases it, so a single slow episode backs off once rather than once per request in flight. A request over the
+// limit is refused right away instead of queueing. Lock free: the limit is a double kept in an AtomicLong.
+final class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final double backoffRatio;
+    private final AtomicLong limitBits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong epoch = new AtomicLong();
+    private final LongAdder shed = new LongAdder();
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos,
+                             double backoffRatio) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(
+                    "Invalid limits: " + minLimit + " <= " + initialLimit + " <= " + maxLimit);
+        }
+        if (targetLatencyNanos <= 0 || backoffRatio <= 0.0 || backoffRatio >= 1.0) {
+            throw new IllegalArgumentException("Invalid target latency or backoff ratio");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.backoffRatio = backoffRatio;
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+    }
+
+    // Returns the ticket to release the request with, or -1 if it is refused.
+    long tryAcquire() {
+        long ticket = epoch.get();
+        int limit = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                shed.increment();
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return ticket;
+            }
+        }
+    }
+
+    void release(long ticket, long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        if (latencyNanos > targetLatencyNanos) {
+            if (epoch.compareAndSet(ticket, ticket + 1)) {
+                update(limit -> Math.max(minLimit, limit * backoffRatio));
+            }
+        } else if (current * 2 >= getLimit()) {
+            // Only grows while at least half of it is in use, an idle limit would grow without bounds otherwise.
+            update(limit -> Math.min(maxLimit, limit + 1.0 / limit));
+        }
+    }
+
+    int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    long getShed() {
+        return shed.sum();
+    }
+
+    private void update(DoubleUnaryOperator function) {
+        long bits;
+        long newBits;
+        do {
+            bits = limitBits.get();
+            newBits = Double.doubleToRawLongBits(function.applyAsDouble(Double.longBitsToDouble(bits)));
+        } while (!limitBits.compareAndSet(bits, newBits));
+    }
+}
@@ -0,0 +1,28 @@
+package com.mycompany.stats;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+@ConditionalOnProperty(name = "statistics.admission.enabled", havingValue = "true")
+class AdmissionControlConfiguration {
+
+    @Bean
+    AdmissionControlFilter admissionControlFilter(StatisticsProperties properties) {
+        StatisticsProperties.Admission admission = properties.getAdmission();
+        return new AdmissionControlFilter(admission.getWrites().toAdaptiveConcurrencyLimit(),
+                admission.getReads().toAdaptiveConcurrencyLimit(), admission.getRetryAfterSecs());
+    }
+
+    // Ahead of the other filters, so that a shed request costs as little as possible.
+    @Bean
+    FilterRegistrationBean admissionControlFilterRegistration(AdmissionControlFilter admissionControlFilter) {
+        FilterRegistrationBean registration = new FilterRegistrationBean(admissionControlFilter);
+        registration.addUrlPatterns("/api/v1/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
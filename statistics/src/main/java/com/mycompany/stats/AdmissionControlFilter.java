@@ -0,0 +1,77 @@
+package com.mycompany.stats;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Admission control in front of StatisticsController: writes (POST /transactions and /transactions/batch) and reads
+// (GET /statistics and below, except the stream) are each admitted by their own AdaptiveConcurrencyLimit, so a spike
+// of writes sheds writes only while reads keep their latency. A write over its limit is answered 429 and a read 503,
+// right away and with a Retry-After, instead of holding a container thread. The limits are published on the actuator
+// metrics endpoint.
+final class AdmissionControlFilter extends OncePerRequestFilter implements PublicMetrics {
+    private final AdaptiveConcurrencyLimit writes;
+    private final AdaptiveConcurrencyLimit reads;
+    private final String retryAfterSecs;
+
+    AdmissionControlFilter(AdaptiveConcurrencyLimit writes, AdaptiveConcurrencyLimit reads, int retryAfterSecs) {
+        this.writes = writes;
+        this.reads = reads;
+        this.retryAfterSecs = String.valueOf(retryAfterSecs);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        AdaptiveConcurrencyLimit limit;
+        HttpStatus shedStatus;
+        if ("POST".equals(request.getMethod()) && path.startsWith("/api/v1/transactions")) {
+            limit = writes;
+            shedStatus = HttpStatus.TOO_MANY_REQUESTS;
+        } else if ("GET".equals(request.getMethod()) && path.startsWith("/api/v1/statistics")
+                && !path.equals("/api/v1/statistics/stream")) {
+            limit = reads;
+            shedStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        } else {
+            chain.doFilter(request, response);
+            return;
+        }
+        long ticket = limit.tryAcquire();
+        if (ticket < 0) {
+            response.setHeader("Retry-After", retryAfterSecs);
+            response.setStatus(shedStatus.value());
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limit.release(ticket, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        addLimit(metrics, "statistics.admission.writes", writes);
+        addLimit(metrics, "statistics.admission.reads", reads);
+        return metrics;
+    }
+
+    private static void addLimit(List<Metric<?>> metrics, String name, AdaptiveConcurrencyLimit limit) {
+        metrics.add(new Metric<>(name + ".limit", limit.getLimit()));
+        metrics.add(new Metric<>(name + ".in-flight", limit.getInFlight()));
+        metrics.add(new Metric<>(name + ".shed", limit.getShed()));
+    }
+}
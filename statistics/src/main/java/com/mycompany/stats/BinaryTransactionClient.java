@@ -0,0 +1,48 @@
+package com.mycompany.stats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+// Client for the BinaryTransactionServer: sends all the given transactions over a single connection and waits for the
+// accepted and expired counts.
+final class BinaryTransactionClient {
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final InetSocketAddress address;
+
+    BinaryTransactionClient(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    TransactionBatchResult send(long[] timestamps, double[] amounts) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            for (int i = 0; i < timestamps.length; i++) {
+                if (buffer.remaining() < BinaryTransactionCodec.RECORD_BYTES) {
+                    writeFully(channel, buffer);
+                }
+                BinaryTransactionCodec.encode(buffer, timestamps[i], amounts[i]);
+            }
+            writeFully(channel, buffer);
+            channel.shutdownOutput();
+
+            ByteBuffer response = ByteBuffer.allocate(16);
+            while (response.hasRemaining()) {
+                if (channel.read(response) < 0) {
+                    throw new IOException("Connection closed before the result was received");
+                }
+            }
+            return new TransactionBatchResult(response.getLong(0), response.getLong(8));
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,24 @@
+package com.mycompany.stats;
+
+import java.nio.ByteBuffer;
+
+// Binary format of a transaction: a fixed 16 byte record made of the timestamp in millis (long) followed by the amount
+// (double), both in network byte order.
+final class BinaryTransactionCodec {
+    static final int RECORD_BYTES = 16;
+
+    private BinaryTransactionCodec() {
+    }
+
+    static void encode(ByteBuffer buffer, long timestamp, double amount) {
+        buffer.putLong(timestamp).putDouble(amount);
+    }
+
+    // Decodes every complete record in the buffer straight into the batch. An incomplete trailing record is left in
+    // the buffer, to be completed by the next read.
+    static void decode(ByteBuffer buffer, TransactionBatch batch) {
+        while (buffer.remaining() >= RECORD_BYTES) {
+            batch.addTransaction(buffer.getLong(), buffer.getDouble());
+        }
+    }
+}
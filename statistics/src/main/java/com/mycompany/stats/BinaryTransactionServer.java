@@ -0,0 +1,131 @@
+package com.mycompany.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+// Dedicated NIO listener for binary transactions (see BinaryTransactionCodec). A client streams records and half closes
+// its side of the connection, every chunk read is decoded straight from a direct buffer into the aggregator, and once
+// the client is done the server answers with the accepted and expired counts (two longs) and closes the connection.
+final class BinaryTransactionServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryTransactionServer.class);
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final int port;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    BinaryTransactionServer(int port) {
+        this.port = port;
+    }
+
+    void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::run, "binary-transaction-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() throws IOException, InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Binary transaction listener failed to select", e);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (key.isAcceptable()) {
+                SocketChannel channel = serverChannel.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    channel.register(selector, SelectionKey.OP_READ, new Connection());
+                }
+            } else if (key.isReadable()) {
+                ((Connection) key.attachment()).read(key);
+            } else if (key.isWritable()) {
+                ((Connection) key.attachment()).write(key);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Closing binary transaction connection", e);
+            close(key);
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close binary transaction connection", e);
+        }
+    }
+
+    private static final class Connection {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final TransactionBatch batch = new TransactionBatch(0);
+        private final ByteBuffer response = ByteBuffer.allocate(16);
+        private long transactions;
+        private long accepted;
+
+        void read(SelectionKey key) throws IOException {
+            int read = ((SocketChannel) key.channel()).read(buffer);
+            if (read > 0) {
+                buffer.flip();
+                batch.clear(System.currentTimeMillis());
+                BinaryTransactionCodec.decode(buffer, batch);
+                accepted += StatisticsAggregator.addTransactions(batch);
+                transactions += batch.getTransactions();
+                buffer.compact();
+            } else if (read < 0) {
+                response.putLong(accepted).putLong(transactions - accepted).flip();
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        void write(SelectionKey key) throws IOException {
+            ((SocketChannel) key.channel()).write(response);
+            if (!response.hasRemaining()) {
+                close(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.mycompany.stats;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// The binary listener is only started when a port is configured, e.g. statistics.binary.port=9090
+@Configuration
+@ConditionalOnProperty("statistics.binary.port")
+class BinaryTransactionServerConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    BinaryTransactionServer binaryTransactionServer(@Value("${statistics.binary.port}") int port) {
+        return new BinaryTransactionServer(port);
+    }
+}
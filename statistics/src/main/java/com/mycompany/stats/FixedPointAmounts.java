@@ -0,0 +1,59 @@
+package com.mycompany.stats;
+
+// Fixed point mode (statistics.amounts.scale): next to the floating point sum, every bucket, segment tree node and
+// rollup also adds up the amounts as a long number of minor units (e.g. cents for a scale of 2), and the statistics
+// returned by the aggregator have their sum, average, min and max replaced by the ones of the minor units. Whole
+// numbers add up exactly, and the minor units of a bucket are an atomic add shared by its concurrent writers (see
+// StatisticsBuckets), so the sum of the window is exact whatever the order the amounts were added and expired in,
+// and an amount of at most `scale` decimals is rendered back as exactly that decimal. An amount is rounded to the
+// nearest minor unit, those beyond MAX_UNITS (e.g. 9 * 10^13 for a scale of 2) are refused.
+final class FixedPointAmounts {
+    static final int MAX_SCALE = 9;
+    // Up to 2^53 every whole number of units is held exactly by the double it is read from and rendered as.
+    private static final double MAX_UNITS = 1L << 53;
+
+    private final int scale;
+    private final double factor;
+
+    FixedPointAmounts(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("The scale must be between 0 and " + MAX_SCALE + ": " + scale);
+        }
+        this.scale = scale;
+        this.factor = Math.pow(10, scale);
+    }
+
+    int getScale() {
+        return scale;
+    }
+
+    // The scale + 1, 0 when the mode is off, as recorded in the persisted file and in the partial states.
+    static int scaleOf(FixedPointAmounts amounts) {
+        return amounts != null ? amounts.getScale() + 1 : 0;
+    }
+
+    boolean isInRange(double amount) {
+        return Math.abs(amount * factor) < MAX_UNITS;
+    }
+
+    // The amount must be in range.
+    long toUnits(double amount) {
+        return Math.round(amount * factor);
+    }
+
+    double toAmount(long units) {
+        return units / factor;
+    }
+
+    // Replaces the floating point totals of statistics built by the aggregator by the ones of its minor units.
+    Statistics render(Statistics statistics) {
+        if (statistics.isEmpty()) {
+            return statistics;
+        }
+        statistics.setSum(toAmount(statistics.getSumInUnits()));
+        statistics.setAverage(toAmount(statistics.getSumInUnits()) / statistics.getCount());
+        statistics.setMin(toAmount(toUnits(statistics.getMin())));
+        statistics.setMax(toAmount(toUnits(statistics.getMax())));
+        return statistics;
+    }
+}
@@ -0,0 +1,13 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@AllArgsConstructor
+@Value
+public class KeyedStatistics {
+    private String key;
+    @JsonUnwrapped
+    private Statistics statistics;
+}
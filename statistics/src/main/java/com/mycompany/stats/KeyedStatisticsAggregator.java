@@ -0,0 +1,357 @@
+package com.mycompany.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// The statistics of the window of the aggregator (see StatisticsWindow) broken down by the key of the transactions
+// (e.g. a merchant id or a currency).
+// Keys are spread over segments, each of them an open addressing table of entry ids pointing into flat primitive
+// arrays: every entry owns a ring of one bucket per bucket of the window (laid out struct-of-arrays at
+// entry * buckets + tick mod buckets) next to the running totals of its window, so a key costs a fixed number of bytes
+// and no object besides its String. Entries whose window is empty are evicted when looked up, when their segment runs
+// out of room and while looking for the top keys.
+final class KeyedStatisticsAggregator {
+    private static final int SEGMENTS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+    // Tick, count, sum, min and max of a bucket, then the running totals, id, hash, table slots and String reference
+    // of an entry.
+    private static final int BYTES_PER_BUCKET = 40;
+    private static final int BYTES_PER_KEY = 64;
+    // Paths under /statistics mapped to other endpoints, a key named after one of them could not be read back.
+    private static final Set<String> RESERVED_KEYS = new HashSet<>(Arrays.asList("partial", "range", "stream"));
+    private static final Comparator<KeyedStatistics> BY_SUM = Comparator.comparingDouble(
+            keyedStatistics -> keyedStatistics.getStatistics().getSum());
+
+    private final StatisticsWindow window;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    KeyedStatisticsAggregator(StatisticsWindow window, int maxKeys) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("The maximum number of keys must be positive: " + maxKeys);
+        }
+        this.window = window;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(window.getBuckets(), (maxKeys + SEGMENTS - 1) / SEGMENTS);
+        }
+    }
+
+    // Worst case of the memory taken by the entries of the keys, their Strings aside.
+    static long bytesPerKey(int buckets) {
+        return (long) buckets * BYTES_PER_BUCKET + BYTES_PER_KEY;
+    }
+
+    // Refuses the keys which could not be read back, before the transaction is added to anything.
+    static void checkKey(String key) {
+        if (RESERVED_KEYS.contains(key)) {
+            throw new IllegalArgumentException("Reserved key: " + key);
+        }
+    }
+
+    // Returns false if the transaction is out of the window, or if its key is new while every segment entry is in use.
+    boolean addTransaction(String key, long timestampInMillis, double amount, long currentTimestampInMillis) {
+        long tick = window.tickOf(timestampInMillis);
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        if (!window.contains(tick, currentTick)) {
+            return false;
+        }
+        int hash = hash(key);
+        return segmentOf(hash).addAmount(key, hash, tick, amount, currentTick);
+    }
+
+    Statistics getStatistics(String key, long currentTimestampInMillis) {
+        Statistics statistics = new Statistics();
+        int hash = hash(key);
+        segmentOf(hash).addTo(key, hash, statistics, window.tickOf(currentTimestampInMillis));
+        return statistics;
+    }
+
+    // The k keys with the highest sum in the window, highest first.
+    List<KeyedStatistics> getTopKeysBySum(int k, long currentTimestampInMillis) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("The number of keys must be positive: " + k);
+        }
+        PriorityQueue<KeyedStatistics> top = new PriorityQueue<>(BY_SUM);
+        for (Segment segment : segments) {
+            segment.collectTop(top, k, window.tickOf(currentTimestampInMillis));
+        }
+        List<KeyedStatistics> keys = new ArrayList<>(top);
+        keys.sort(BY_SUM.reversed());
+        return keys;
+    }
+
+    // Number of keys currently holding an entry, including idle ones not evicted yet.
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentOf(int hash) {
+        return segments[(hash >>> 16) & (SEGMENTS - 1)];
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        hash = (hash ^ (hash >>> 16)) * 0x85EBCA6B;
+        hash = (hash ^ (hash >>> 13)) * 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Segment {
+        private static final int INITIAL_ENTRIES = 16;
+
+        private final int buckets;
+        private final int maxEntries;
+        // Entry id + 1 of every key, 0 for a free slot, linear probing with backward shift deletion.
+        private int[] table;
+        private String[] keys = new String[0];
+        private int[] hashes = new int[0];
+        private int[] nextFree = new int[0];
+        private int freeHead = -1;
+        private int used;
+        private int size;
+        // Running totals of the window of every entry.
+        private long[] minTicks = new long[0];
+        private long[] counts = new long[0];
+        private double[] sums = new double[0];
+        private double[] mins = new double[0];
+        private double[] maxs = new double[0];
+        // The ring of buckets of every entry.
+        private long[] bucketTicks = new long[0];
+        private long[] bucketCounts = new long[0];
+        private double[] bucketSums = new double[0];
+        private double[] bucketMins = new double[0];
+        private double[] bucketMaxs = new double[0];
+
+        Segment(int buckets, int maxEntries) {
+            this.buckets = buckets;
+            this.maxEntries = maxEntries;
+            resize(Math.min(INITIAL_ENTRIES, maxEntries));
+        }
+
+        synchronized boolean addAmount(String key, int hash, long tick, double amount, long currentTick) {
+            int entry = find(key, hash);
+            if (entry < 0) {
+                entry = allocate(currentTick);
+                if (entry < 0) {
+                    return false;
+                }
+                keys[entry] = key;
+                hashes[entry] = hash;
+                insert(entry);
+                size++;
+                reset(entry, currentTick);
+            } else {
+                rotate(entry, currentTick);
+            }
+            if (tick < minTicks[entry] || tick >= minTicks[entry] + buckets) {
+                return false;
+            }
+            int bucket = bucketOf(entry, tick);
+            if (bucketTicks[bucket] != tick) {
+                bucketTicks[bucket] = tick;
+                bucketCounts[bucket] = 0;
+                bucketSums[bucket] = 0.0;
+                bucketMins[bucket] = Double.MAX_VALUE;
+                bucketMaxs[bucket] = -Double.MAX_VALUE;
+            }
+            bucketCounts[bucket]++;
+            bucketSums[bucket] += amount;
+            bucketMins[bucket] = amount < bucketMins[bucket] ? amount : bucketMins[bucket];
+            bucketMaxs[bucket] = amount > bucketMaxs[bucket] ? amount : bucketMaxs[bucket];
+            counts[entry]++;
+            sums[entry] += amount;
+            mins[entry] = amount < mins[entry] ? amount : mins[entry];
+            maxs[entry] = amount > maxs[entry] ? amount : maxs[entry];
+            return true;
+        }
+
+        synchronized void addTo(String key, int hash, Statistics statistics, long currentTick) {
+            int entry = find(key, hash);
+            if (entry < 0) {
+                return;
+            }
+            rotate(entry, currentTick);
+            if (counts[entry] == 0) {
+                evict(entry);
+                return;
+            }
+            statistics.addStatistics(counts[entry], sums[entry], mins[entry], maxs[entry]);
+        }
+
+        synchronized void collectTop(PriorityQueue<KeyedStatistics> top, int k, long currentTick) {
+            for (int entry = 0; entry < used; entry++) {
+                if (keys[entry] == null) {
+                    continue;
+                }
+                rotate(entry, currentTick);
+                if (counts[entry] == 0) {
+                    evict(entry);
+                } else if (top.size() < k || sums[entry] > top.peek().getStatistics().getSum()) {
+                    top.offer(new KeyedStatistics(keys[entry],
+                            new Statistics().addStatistics(counts[entry], sums[entry], mins[entry], maxs[entry])));
+                    if (top.size() > k) {
+                        top.poll();
+                    }
+                }
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private int find(String key, int hash) {
+            int mask = table.length - 1;
+            for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = table[slot] - 1;
+                if (hashes[entry] == hash && keys[entry].equals(key)) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(int entry) {
+            int mask = table.length - 1;
+            int slot = hashes[entry] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+
+        // Returns a free entry, evicting the idle ones or growing when there is none, or -1 when every entry is in use.
+        private int allocate(long currentTick) {
+            if (freeHead < 0 && used == keys.length) {
+                int evicted = evictIdle(currentTick);
+                if (evicted < keys.length / 4 && keys.length < maxEntries) {
+                    resize(Math.min(maxEntries, keys.length * 2));
+                }
+            }
+            if (freeHead >= 0) {
+                int entry = freeHead;
+                freeHead = nextFree[entry];
+                return entry;
+            }
+            return used < keys.length ? used++ : -1;
+        }
+
+        private int evictIdle(long currentTick) {
+            int evicted = 0;
+            for (int entry = 0; entry < used; entry++) {
+                if (keys[entry] != null) {
+                    rotate(entry, currentTick);
+                    if (counts[entry] == 0) {
+                        evict(entry);
+                        evicted++;
+                    }
+                }
+            }
+            return evicted;
+        }
+
+        private void evict(int entry) {
+            int mask = table.length - 1;
+            int slot = hashes[entry] & mask;
+            while (table[slot] != entry + 1) {
+                slot = (slot + 1) & mask;
+            }
+            // Shift back the following keys of the probe sequence which are not at their home slot.
+            for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+                int home = hashes[table[next] - 1] & mask;
+                if (next > slot ? home <= slot || home > next : home <= slot && home > next) {
+                    table[slot] = table[next];
+                    slot = next;
+                }
+            }
+            table[slot] = 0;
+            keys[entry] = null;
+            nextFree[entry] = freeHead;
+            freeHead = entry;
+            size--;
+        }
+
+        // Ticks before 1970 are negative, hence the floor modulo.
+        private int bucketOf(int entry, long tick) {
+            return entry * buckets + (int) Math.floorMod(tick, (long) buckets);
+        }
+
+        private void reset(int entry, long currentTick) {
+            minTicks[entry] = currentTick - (buckets - 1);
+            clear(entry);
+            Arrays.fill(bucketTicks, entry * buckets, (entry + 1) * buckets, Long.MIN_VALUE);
+        }
+
+        private void rotate(int entry, long currentTick) {
+            long currentMinTick = currentTick - (buckets - 1);
+            if (currentMinTick <= minTicks[entry]) {
+                return;
+            }
+            if (currentMinTick - minTicks[entry] >= buckets) {
+                clear(entry);
+                minTicks[entry] = currentMinTick;
+                return;
+            }
+            boolean extremesExpired = false;
+            for (long tick = minTicks[entry]; tick < currentMinTick; tick++) {
+                int bucket = bucketOf(entry, tick);
+                if (bucketTicks[bucket] == tick) {
+                    counts[entry] -= bucketCounts[bucket];
+                    sums[entry] -= bucketSums[bucket];
+                    extremesExpired |= bucketMins[bucket] <= mins[entry] || bucketMaxs[bucket] >= maxs[entry];
+                }
+            }
+            minTicks[entry] = currentMinTick;
+            if (counts[entry] == 0) {
+                clear(entry);
+            } else if (extremesExpired) {
+                mins[entry] = Double.MAX_VALUE;
+                maxs[entry] = -Double.MAX_VALUE;
+                for (int bucket = entry * buckets; bucket < (entry + 1) * buckets; bucket++) {
+                    if (bucketTicks[bucket] >= currentMinTick) {
+                        mins[entry] = bucketMins[bucket] < mins[entry] ? bucketMins[bucket] : mins[entry];
+                        maxs[entry] = bucketMaxs[bucket] > maxs[entry] ? bucketMaxs[bucket] : maxs[entry];
+                    }
+                }
+            }
+        }
+
+        private void clear(int entry) {
+            counts[entry] = 0;
+            sums[entry] = 0.0;
+            mins[entry] = Double.MAX_VALUE;
+            maxs[entry] = -Double.MAX_VALUE;
+        }
+
+        private void resize(int entries) {
+            keys = Arrays.copyOf(keys, entries);
+            hashes = Arrays.copyOf(hashes, entries);
+            nextFree = Arrays.copyOf(nextFree, entries);
+            minTicks = Arrays.copyOf(minTicks, entries);
+            counts = Arrays.copyOf(counts, entries);
+            sums = Arrays.copyOf(sums, entries);
+            mins = Arrays.copyOf(mins, entries);
+            maxs = Arrays.copyOf(maxs, entries);
+            int slots = entries * buckets;
+            bucketTicks = Arrays.copyOf(bucketTicks, slots);
+            bucketCounts = Arrays.copyOf(bucketCounts, slots);
+            bucketSums = Arrays.copyOf(bucketSums, slots);
+            bucketMins = Arrays.copyOf(bucketMins, slots);
+            bucketMaxs = Arrays.copyOf(bucketMaxs, slots);
+            // Keeps the table at most half full.
+            table = new int[Integer.highestOneBit(entries * 2 - 1) * 2];
+            for (int entry = 0; entry < used; entry++) {
+                if (keys[entry] != null) {
+                    insert(entry);
+                }
+            }
+        }
+    }
+}
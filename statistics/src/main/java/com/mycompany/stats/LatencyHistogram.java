@@ -0,0 +1,81 @@
+package com.mycompany.stats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histogram of durations in nanos with 8 linear sub-buckets per power of two, so a recorded value is known within
+// 12.5%. Recording only increments striped counters, which keeps it cheap under contention.
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[indexOf(nanos)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    double getMeanNanos() {
+        long count = getCount();
+        return count > 0 ? (double) totalNanos.sum() / count : 0.0;
+    }
+
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    // Upper bound of the bucket holding the given percentile (between 0 and 100), 0 when nothing was recorded.
+    long getPercentileNanos(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += buckets[index].sum();
+            if (seen >= rank && seen > 0) {
+                return Math.min(getMaxNanos(), index + 1 < BUCKETS ? lowerBoundOf(index + 1) - 1 : Long.MAX_VALUE);
+            }
+        }
+        return getMaxNanos();
+    }
+
+    static int indexOf(long nanos) {
+        if (nanos < 2 * SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+                + (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowerBoundOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        return (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << ((index >>> SUB_BUCKET_BITS) - 1);
+    }
+}
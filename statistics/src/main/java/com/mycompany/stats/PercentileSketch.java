@@ -0,0 +1,72 @@
+package com.mycompany.stats;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Log-bucketed histogram of amounts (in the spirit of DDSketch): bin i covers (MIN_AMOUNT * gamma^(i-2),
+// MIN_AMOUNT * gamma^(i-1)], so any value reported for a bin is within RELATIVE_ACCURACY of the amounts it holds. The
+// number of bins is fixed, which bounds the memory of every bucket, and two sketches are merged (or subtracted when a
+// bucket expires) by adding up their bins. Amounts up to MIN_AMOUNT (including zero and negative ones) share the first
+// bin and amounts from MAX_AMOUNT on share the last one, the reported values are clamped to the window's min and max.
+final class PercentileSketch {
+    static final double RELATIVE_ACCURACY = 0.02;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_AMOUNT = 0.01;
+    private static final double MAX_AMOUNT = 1e9;
+    static final int BINS = 2 + (int) Math.ceil(Math.log(MAX_AMOUNT / MIN_AMOUNT) / LOG_GAMMA);
+
+    private PercentileSketch() {
+    }
+
+    static int binOf(double amount) {
+        if (amount <= MIN_AMOUNT) {
+            return 0;
+        }
+        if (amount >= MAX_AMOUNT) {
+            return BINS - 1;
+        }
+        return Math.min(BINS - 1, 1 + (int) Math.ceil(Math.log(amount / MIN_AMOUNT) / LOG_GAMMA));
+    }
+
+    private static double valueOf(int bin) {
+        return 2 * MIN_AMOUNT * Math.pow(GAMMA, bin - 1) / (GAMMA + 1);
+    }
+
+    // Percentiles (between 0 and 100) of the amounts counted in the given bins, keyed by the requested percentile.
+    static Map<String, Double> percentiles(long[] bins, Statistics statistics, double[] percentiles) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (double percentile : percentiles) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Percentiles must be between 0 and 100: " + percentile);
+            }
+            values.put(BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString(),
+                    statistics.isEmpty() ? 0.0 : quantile(bins, statistics, percentile / 100));
+        }
+        return values;
+    }
+
+    // The lowest and highest ranks, as well as the open ended first and last bins, are answered by the exact min / max.
+    private static double quantile(long[] bins, Statistics statistics, double quantile) {
+        double rank = quantile * (statistics.getCount() - 1);
+        if (rank == 0) {
+            return statistics.getMin();
+        }
+        if (rank == statistics.getCount() - 1) {
+            return statistics.getMax();
+        }
+        long seen = 0;
+        int bin = 0;
+        while (bin < BINS - 1 && (seen += bins[bin]) <= rank) {
+            bin++;
+        }
+        if (bin == 0) {
+            return statistics.getMin();
+        }
+        if (bin == BINS - 1) {
+            return statistics.getMax();
+        }
+        return Math.max(statistics.getMin(), Math.min(statistics.getMax(), valueOf(bin)));
+    }
+}
@@ -1,7 +1,11 @@
 package com.mycompany.stats;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 final class Statistics {
     private double sum;
@@ -9,6 +13,12 @@ final class Statistics {
     private double max;
     private long count;
     private double average;
+    // Only present when percentiles were requested, keyed by the requested percentile e.g. "99.9".
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Double> percentiles;
+    // Exact sum of the amounts in minor units, only kept in fixed point mode (see FixedPointAmounts).
+    @JsonIgnore
+    private long sumInUnits;
 
     Statistics() {
         min = Double.MAX_VALUE;
@@ -16,18 +26,31 @@ final class Statistics {
     }
 
     synchronized void addTransaction(Transaction transaction) {
-        count++;
-        sum += transaction.getAmount();
-        min = transaction.getAmount() < min ? transaction.getAmount() : min;
-        max = transaction.getAmount() > max ? transaction.getAmount() : max;
-        calculateAverage();
+        addStatistics(1, transaction.getAmount(), transaction.getAmount(), transaction.getAmount());
     }
 
     Statistics addStatistics(Statistics newStatistics) {
-        count += newStatistics.getCount();
-        sum += newStatistics.getSum();
-        min = newStatistics.getMin() < min ? newStatistics.getMin() : min;
-        max = newStatistics.getMax() > max ? newStatistics.getMax() : max;
+        return addStatistics(newStatistics.getCount(), newStatistics.getSum(), newStatistics.getSumInUnits(),
+                newStatistics.getMin(), newStatistics.getMax());
+    }
+
+    Statistics addStatistics(long newCount, double newSum, double newMin, double newMax) {
+        return addStatistics(newCount, newSum, 0, newMin, newMax);
+    }
+
+    // The first statistics added replace the initial min / max, so that amounts which are all negative do not end up
+    // with the initial max (Double.MIN_VALUE is positive).
+    Statistics addStatistics(long newCount, double newSum, long newSumInUnits, double newMin, double newMax) {
+        if (newCount > 0 && count == 0) {
+            min = newMin;
+            max = newMax;
+        } else {
+            min = newMin < min ? newMin : min;
+            max = newMax > max ? newMax : max;
+        }
+        count += newCount;
+        sum += newSum;
+        sumInUnits += newSumInUnits;
         calculateAverage();
         return this;
     }
@@ -1,78 +1,119 @@
 package com.mycompany.stats;
 
-import java.util.Arrays;
-import java.util.stream.IntStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 
+// The aggregator of the JVM, shared by the controller, the lightweight servers, the persistence and the metrics: every
+// method delegates to a single StripedStatisticsAggregator, see there.
 final class StatisticsAggregator {
-    private static long baseTimestampSecs;
-    private static long minTimestampInSecs;
+    private static final StripedStatisticsAggregator DEFAULT = new StripedStatisticsAggregator();
 
-    // Storing the statistics in a cyclic buffer of fixed 60 size i.e. 60 seconds data.
-    private static Statistics[] statistics = new Statistics[60];
+    private StatisticsAggregator() {
+    }
+
+    static StripedStatisticsAggregator getDefault() {
+        return DEFAULT;
+    }
 
     static void initialize(long currentTimeStampMillis) {
-        baseTimestampSecs = (currentTimeStampMillis / 1000) - 59;
-        minTimestampInSecs = baseTimestampSecs;
-        IntStream.range(0, statistics.length).forEach(
-                i -> statistics[i] = new Statistics()
-        );
+        DEFAULT.initialize(currentTimeStampMillis);
     }
 
-    private StatisticsAggregator() {
+    static void initialize(StatisticsWindow window, long currentTimeStampMillis) {
+        DEFAULT.initialize(window, currentTimeStampMillis);
+    }
+
+    static void initialize(StatisticsWindow window, ByteBuffer region, long currentTimeStampMillis) {
+        DEFAULT.initialize(window, region, currentTimeStampMillis);
+    }
+
+    static void attach(StatisticsWindow window, ByteBuffer region, long currentTimestampInMillis) {
+        DEFAULT.attach(window, region, currentTimestampInMillis);
+    }
+
+    static int getStripes() {
+        return DEFAULT.getStripes();
+    }
+
+    static StatisticsWindow getWindow() {
+        return DEFAULT.getWindow();
+    }
+
+    static int getRegionBytes(StatisticsWindow window) {
+        return StripedStatisticsAggregator.getRegionBytes(window);
+    }
+
+    static void setMetrics(StatisticsMetrics metrics) {
+        DEFAULT.setMetrics(metrics);
+    }
+
+    static void setAmounts(FixedPointAmounts amounts) {
+        DEFAULT.setAmounts(amounts);
+    }
+
+    static FixedPointAmounts getAmounts() {
+        return DEFAULT.getAmounts();
     }
 
     static boolean addTransaction(Transaction transaction, long currentTimestampInMillis) {
-        long timestamp = transaction.getTimestamp();
-        if ((currentTimestampInMillis - timestamp) > 60000) {
-            return false;
-        }
-        synchronized (statistics) {
-            resetStatisticsArray(currentTimestampInMillis / 1000);
-            int index = (int) ((timestamp / 1000) - baseTimestampSecs) % 60;
-            statistics[index].addTransaction(transaction);
-        }
-        return true;
+        return DEFAULT.addTransaction(transaction, currentTimestampInMillis);
+    }
+
+    static long toUnits(double amount) {
+        return DEFAULT.toUnits(amount);
+    }
+
+    static long addTransactions(TransactionBatch batch) {
+        return DEFAULT.addTransactions(batch);
+    }
+
+    static void addBuckets(StatisticsBuckets buckets, long currentTimestampInMillis) {
+        DEFAULT.addBuckets(buckets, currentTimestampInMillis);
+    }
+
+    static boolean isWithinWindow(long timestampInMillis, long currentTimestampInMillis) {
+        return DEFAULT.isWithinWindow(timestampInMillis, currentTimestampInMillis);
     }
 
     static Statistics getAggregatedStatistics(long currentTimestampInMillis) {
-        synchronized (statistics) {
-            resetStatisticsArray(currentTimestampInMillis / 1000);
-        }
-        return Arrays.stream(statistics)
-                .reduce(new Statistics(), Statistics::addStatistics);
-    }
-
-    private static void resetStatisticsArray(long currentTimestampInSecs) {
-        long currentMinTimestamp = currentTimestampInSecs - 59;
-        long difference = currentMinTimestamp - minTimestampInSecs;
-        int start = 0;
-        int end = 60;
-        if (difference == 0) {
-            return;
-        }
-        if (difference < 60) {
-            start = (int) (minTimestampInSecs - baseTimestampSecs) % 60;
-            end = (int) (currentMinTimestamp - baseTimestampSecs) % 60;
-        }
-        if (start < end) {
-            for (int i = start; i < end; i++) {
-                statistics[i] = new Statistics();
-            }
-        } else {
-            for (int i = start; i < 60; i++) {
-                statistics[i] = new Statistics();
-            }
-            for (int i = 0; i < end; i++) {
-                statistics[i] = new Statistics();
-            }
-            if (start == end) {
-                statistics[end] = new Statistics();
-            }
-        }
-        minTimestampInSecs = currentMinTimestamp;
+        return DEFAULT.getAggregatedStatistics(currentTimestampInMillis);
+    }
+
+    static Statistics getAggregatedStatistics(long currentTimestampInMillis, Statistics statistics) {
+        return DEFAULT.getAggregatedStatistics(currentTimestampInMillis, statistics);
+    }
+
+    static Statistics getAggregatedStatistics(long currentTimestampInMillis, long windowInMillis,
+                                              double[] percentiles) {
+        return DEFAULT.getAggregatedStatistics(currentTimestampInMillis, windowInMillis, percentiles);
+    }
+
+    static Statistics getAggregatedStatistics(long currentTimestampInMillis, double[] percentiles) {
+        return DEFAULT.getAggregatedStatistics(currentTimestampInMillis, percentiles);
+    }
+
+    static List<TimestampedStatistics> getRange(long fromInMillis, long toInMillis, long stepInMillis,
+                                                double[] percentiles, long currentTimestampInMillis) {
+        return DEFAULT.getRange(fromInMillis, toInMillis, stepInMillis, percentiles, currentTimestampInMillis);
+    }
+
+    static ByteBuffer[] slice(ByteBuffer region, int stripes, StatisticsWindow window) {
+        return StripedStatisticsAggregator.slice(region, stripes, window);
+    }
+
+    static long getVersion() {
+        return DEFAULT.getVersion();
+    }
+
+    static long getExpiredBuckets() {
+        return DEFAULT.getExpiredBuckets();
+    }
+
+    static Statistics[] getStatistics(long currentTimestampInMillis) {
+        return DEFAULT.getStatistics(currentTimestampInMillis);
     }
 
     static Statistics[] getStatistics() {
-        return statistics;
+        return DEFAULT.getStatistics();
     }
 }
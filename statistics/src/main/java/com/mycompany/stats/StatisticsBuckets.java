@@ -0,0 +1,332 @@
+package com.mycompany.stats;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+// Fixed layout storage for a cyclic buffer of per bucket statistics, kept in a single ByteBuffer region instead of one
+// object per bucket. Every slot is stamped with the timestamp of the bucket it holds, in units of the bucket width, so
+// an expired slot is simply recognised by its stamp and overwritten in place by the next bucket mapping to it: nothing
+// is ever allocated after construction.
+// Next to timestamp, count, sum, min and max, every slot holds the sum in minor units of the fixed point mode (see
+// FixedPointAmounts) and the bins of its PercentileSketch.
+// Slots are written without locks, in native byte order: counts and bins are atomic adds, the sum a CAS loop on the
+// bits of the double and min / max a CAS loop which gives up as soon as the slot already holds a lower / higher value.
+// The stamp shares its word with the number of writers in the middle of the slot and two flags: EXCLUSIVE while a
+// writer hands the slot over to a newer bucket, which is only done once the writers of the previous one are gone, and
+// HELD while a reader waits for those writers to be gone. Every writer bumps the sequence of the slot on its way out,
+// so a reader copies a slot as of a moment no writer was in it (see read).
+final class StatisticsBuckets {
+    private static final Unsafe UNSAFE;
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+            ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int STATE_OFFSET = 0;
+    private static final int COUNT_OFFSET = 8;
+    private static final int SUM_OFFSET = 16;
+    private static final int MIN_OFFSET = 24;
+    private static final int MAX_OFFSET = 32;
+    private static final int SUM_IN_UNITS_OFFSET = 40;
+    private static final int SEQUENCE_OFFSET = 48;
+    private static final int SKETCH_OFFSET = 56;
+    // Keeps every slot 8 byte aligned, for the atomic updates of its longs.
+    static final int BYTES_PER_BUCKET = (SKETCH_OFFSET + PercentileSketch.BINS * 4 + 7) & ~7;
+
+    private static final int TIMESTAMP_SHIFT = 16;
+    private static final long WRITERS = (1 << 14) - 1;
+    private static final long HELD = 1 << 14;
+    private static final long EXCLUSIVE = 1 << 15;
+    private static final long EMPTY = Long.MIN_VALUE;
+    // Reads spoilt by writers before new ones are held back.
+    private static final int OPTIMISTIC_READS = 4;
+
+    // Outcomes of acquire.
+    static final int ACQUIRED = 0;
+    static final int EXPIRED = 1;
+    static final int BUSY = 2;
+    static final int STALE = 3;
+
+    // Keeps the memory of the region alive.
+    private final ByteBuffer buffer;
+    // The array of a heap buffer and the offset of the region in it, or the address of a direct buffer.
+    private final Object base;
+    private final long address;
+    private final int size;
+
+    StatisticsBuckets(ByteBuffer buffer, int size) {
+        this(buffer, size, true);
+    }
+
+    private StatisticsBuckets(ByteBuffer buffer, int size, boolean reset) {
+        this.buffer = buffer;
+        if (buffer.isDirect()) {
+            this.base = null;
+            this.address = UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+        } else {
+            this.base = buffer.array();
+            this.address = Unsafe.ARRAY_BYTE_BASE_OFFSET + buffer.arrayOffset();
+        }
+        this.size = size;
+        for (int index = 0; reset && index < size; index++) {
+            reset(index, 0);
+            clear(index);
+        }
+    }
+
+    // Takes over slots written before, e.g. by a previous run into a mapped file.
+    static StatisticsBuckets attach(ByteBuffer buffer, int size) {
+        return new StatisticsBuckets(buffer, size, false);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getTimestamp(int index) {
+        return UNSAFE.getLongVolatile(base, offset(index) + STATE_OFFSET) >> TIMESTAMP_SHIFT;
+    }
+
+    long getCount(int index) {
+        return UNSAFE.getLong(base, offset(index) + COUNT_OFFSET);
+    }
+
+    double getSum(int index) {
+        return UNSAFE.getDouble(base, offset(index) + SUM_OFFSET);
+    }
+
+    long getSumInUnits(int index) {
+        return UNSAFE.getLong(base, offset(index) + SUM_IN_UNITS_OFFSET);
+    }
+
+    double getMin(int index) {
+        return UNSAFE.getDouble(base, offset(index) + MIN_OFFSET);
+    }
+
+    double getMax(int index) {
+        return UNSAFE.getDouble(base, offset(index) + MAX_OFFSET);
+    }
+
+    int getSketchCount(int index, int bin) {
+        return UNSAFE.getInt(base, offset(index) + SKETCH_OFFSET + bin * 4);
+    }
+
+    // Registers the caller as a writer of the bucket of the given timestamp. ACQUIRED when the slot already holds it,
+    // EXPIRED when the slot holds an older bucket which the caller now owns exclusively: the content of that bucket is
+    // left as it is until reset, which also registers the caller. BUSY when a reader holds the slot back or when it
+    // is being handed over, which only takes as long as the writers already in it, and STALE when the slot holds a
+    // newer bucket.
+    int acquire(int index, long timestamp) {
+        long offset = offset(index) + STATE_OFFSET;
+        while (true) {
+            long state = UNSAFE.getLongVolatile(base, offset);
+            long stamp = state >> TIMESTAMP_SHIFT;
+            if (stamp > timestamp) {
+                return STALE;
+            }
+            if ((state & (HELD | EXCLUSIVE)) != 0) {
+                return BUSY;
+            }
+            if (stamp == timestamp) {
+                if ((state & WRITERS) == WRITERS) {
+                    return BUSY;
+                }
+                if (UNSAFE.compareAndSwapLong(base, offset, state, state + 1)) {
+                    return ACQUIRED;
+                }
+            } else if ((state & WRITERS) != 0) {
+                return BUSY;
+            } else if (UNSAFE.compareAndSwapLong(base, offset, state, state | EXCLUSIVE)) {
+                return EXPIRED;
+            }
+        }
+    }
+
+    // Takes the slot over exclusively if it holds a bucket older than the given timestamp and nobody is in it, the
+    // content of that bucket is left as it is until cleared.
+    boolean tryExpire(int index, long timestamp) {
+        long offset = offset(index) + STATE_OFFSET;
+        long state = UNSAFE.getLongVolatile(base, offset);
+        return state != EMPTY && state >> TIMESTAMP_SHIFT < timestamp && (state & (WRITERS | HELD | EXCLUSIVE)) == 0
+                && UNSAFE.compareAndSwapLong(base, offset, state, state | EXCLUSIVE);
+    }
+
+    // Must be called by the owner of the slot (see acquire), which is registered as its writer once it is reset.
+    void reset(int index, long timestamp) {
+        long offset = offset(index);
+        UNSAFE.putLong(base, offset + COUNT_OFFSET, 0);
+        UNSAFE.putDouble(base, offset + SUM_OFFSET, 0.0);
+        UNSAFE.putDouble(base, offset + MIN_OFFSET, Double.MAX_VALUE);
+        UNSAFE.putDouble(base, offset + MAX_OFFSET, -Double.MAX_VALUE);
+        UNSAFE.putLong(base, offset + SUM_IN_UNITS_OFFSET, 0);
+        UNSAFE.setMemory(base, offset + SKETCH_OFFSET, PercentileSketch.BINS * 4, (byte) 0);
+        UNSAFE.putLongVolatile(base, offset + STATE_OFFSET, timestamp << TIMESTAMP_SHIFT | 1);
+    }
+
+    // Must be called by the owner of the slot, or while nothing else uses the buckets. Only invalidates the slot: it
+    // is reset as a whole once a bucket is added to it again.
+    void clear(int index) {
+        long offset = offset(index);
+        UNSAFE.putLong(base, offset + COUNT_OFFSET, 0);
+        UNSAFE.putLongVolatile(base, offset + STATE_OFFSET, EMPTY);
+    }
+
+    // Unregisters a writer (see acquire).
+    void release(int index) {
+        long offset = offset(index);
+        UNSAFE.getAndAddLong(base, offset + SEQUENCE_OFFSET, 1);
+        UNSAFE.getAndAddLong(base, offset + STATE_OFFSET, -1);
+    }
+
+    // Forgets the writers and readers of a previous run, which are gone. A slot left in the middle of being handed
+    // over is cleared.
+    void recover(int index) {
+        long offset = offset(index) + STATE_OFFSET;
+        long state = UNSAFE.getLong(base, offset);
+        if ((state & EXCLUSIVE) != 0) {
+            clear(index);
+        } else {
+            UNSAFE.putLongVolatile(base, offset, state & ~(WRITERS | HELD));
+        }
+    }
+
+    // The amount in minor units is 0 when not in fixed point mode. Must be called by a registered writer.
+    void addAmount(int index, double amount, long units, int bin) {
+        addStatistics(index, 1, amount, units, amount, amount);
+        UNSAFE.getAndAddInt(base, offset(index) + SKETCH_OFFSET + bin * 4, 1);
+    }
+
+    // The source slot must not be written meanwhile. Must be called by a registered writer.
+    void addBucket(int index, StatisticsBuckets source, int sourceIndex) {
+        addStatistics(index, source.getCount(sourceIndex), source.getSum(sourceIndex),
+                source.getSumInUnits(sourceIndex), source.getMin(sourceIndex), source.getMax(sourceIndex));
+        long offset = offset(index) + SKETCH_OFFSET;
+        for (int bin = 0; bin < PercentileSketch.BINS; bin++) {
+            int count = source.getSketchCount(sourceIndex, bin);
+            if (count != 0) {
+                UNSAFE.getAndAddInt(base, offset + bin * 4, count);
+            }
+        }
+    }
+
+    // Adds a bucket held outside of a StatisticsBuckets, e.g. by a TransactionBatch. Must be called by a registered
+    // writer.
+    void addBucket(int index, long count, double sum, long sumInUnits, double min, double max, int[] sketch) {
+        addStatistics(index, count, sum, sumInUnits, min, max);
+        long offset = offset(index) + SKETCH_OFFSET;
+        for (int bin = 0; bin < PercentileSketch.BINS; bin++) {
+            if (sketch[bin] != 0) {
+                UNSAFE.getAndAddInt(base, offset + bin * 4, sketch[bin]);
+            }
+        }
+    }
+
+    // Copies the slot into the given snapshot, its sketch too when the snapshot has one. The copy is retried until no
+    // writer was in the slot while it was made; after a few attempts spoilt by writers, new ones are held back (they
+    // move on to another stripe) until the writers already in it are gone.
+    void read(int index, Snapshot snapshot) {
+        long offset = offset(index);
+        boolean held = false;
+        for (int attempt = 1; ; attempt++) {
+            long state = UNSAFE.getLongVolatile(base, offset + STATE_OFFSET);
+            long sequence = UNSAFE.getLongVolatile(base, offset + SEQUENCE_OFFSET);
+            if ((state & (WRITERS | EXCLUSIVE)) == 0) {
+                UNSAFE.loadFence();
+                snapshot.timestamp = state >> TIMESTAMP_SHIFT;
+                snapshot.count = UNSAFE.getLong(base, offset + COUNT_OFFSET);
+                snapshot.sum = UNSAFE.getDouble(base, offset + SUM_OFFSET);
+                snapshot.sumInUnits = UNSAFE.getLong(base, offset + SUM_IN_UNITS_OFFSET);
+                snapshot.min = UNSAFE.getDouble(base, offset + MIN_OFFSET);
+                snapshot.max = UNSAFE.getDouble(base, offset + MAX_OFFSET);
+                for (int bin = 0; snapshot.sketch != null && bin < PercentileSketch.BINS; bin++) {
+                    snapshot.sketch[bin] = UNSAFE.getInt(base, offset + SKETCH_OFFSET + bin * 4);
+                }
+                UNSAFE.loadFence();
+                if (UNSAFE.getLongVolatile(base, offset + STATE_OFFSET) == state
+                        && UNSAFE.getLongVolatile(base, offset + SEQUENCE_OFFSET) == sequence) {
+                    if (held) {
+                        UNSAFE.getAndAddLong(base, offset + STATE_OFFSET, -HELD);
+                    }
+                    return;
+                }
+            } else if (!held && attempt >= OPTIMISTIC_READS && (state & (HELD | EXCLUSIVE)) == 0) {
+                held = UNSAFE.compareAndSwapLong(base, offset + STATE_OFFSET, state, state | HELD);
+            } else if ((state & EXCLUSIVE) != 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private long offset(int index) {
+        return address + (long) index * BYTES_PER_BUCKET;
+    }
+
+    private void addStatistics(int index, long count, double sum, long sumInUnits, double min, double max) {
+        long offset = offset(index);
+        UNSAFE.getAndAddLong(base, offset + COUNT_OFFSET, count);
+        long bits = UNSAFE.getLongVolatile(base, offset + SUM_OFFSET);
+        while (!UNSAFE.compareAndSwapLong(base, offset + SUM_OFFSET, bits,
+                Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + sum))) {
+            bits = UNSAFE.getLongVolatile(base, offset + SUM_OFFSET);
+        }
+        UNSAFE.getAndAddLong(base, offset + SUM_IN_UNITS_OFFSET, sumInUnits);
+        bits = UNSAFE.getLongVolatile(base, offset + MIN_OFFSET);
+        while (min < Double.longBitsToDouble(bits)
+                && !UNSAFE.compareAndSwapLong(base, offset + MIN_OFFSET, bits, Double.doubleToRawLongBits(min))) {
+            bits = UNSAFE.getLongVolatile(base, offset + MIN_OFFSET);
+        }
+        bits = UNSAFE.getLongVolatile(base, offset + MAX_OFFSET);
+        while (max > Double.longBitsToDouble(bits)
+                && !UNSAFE.compareAndSwapLong(base, offset + MAX_OFFSET, bits, Double.doubleToRawLongBits(max))) {
+            bits = UNSAFE.getLongVolatile(base, offset + MAX_OFFSET);
+        }
+    }
+
+    // A copy of a slot, reused by its reader.
+    static final class Snapshot {
+        private final int[] sketch;
+        private long timestamp;
+        private long count;
+        private double sum;
+        private long sumInUnits;
+        private double min;
+        private double max;
+
+        Snapshot(boolean withSketch) {
+            this.sketch = withSketch ? new int[PercentileSketch.BINS] : null;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        void addTo(Statistics statistics) {
+            statistics.addStatistics(count, sum, sumInUnits, min, max);
+        }
+
+        void copyTo(StatisticsSegmentTree tree, int index) {
+            tree.set(index, count, sum, sumInUnits, min, max);
+        }
+
+        void addSketchTo(long[] bins) {
+            for (int bin = 0; bin < bins.length; bin++) {
+                bins[bin] += sketch[bin];
+            }
+        }
+    }
+}
@@ -1,27 +1,241 @@
 package com.mycompany.stats;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1")
 public class StatisticsController {
+    private static final int BINARY_BUFFER_BYTES = 8 * 1024;
+    // Reused by every binary batch of a request thread, so decoding one allocates nothing.
+    private static final ThreadLocal<BinaryBatchBuffers> BINARY_BATCH_BUFFERS =
+            ThreadLocal.withInitial(BinaryBatchBuffers::new);
+
+    private final KeyedStatisticsAggregator keyedStatisticsAggregator;
+    private final TransactionBatchReader transactionBatchReader;
+    private final StatisticsStream statisticsStream;
+    private final StatisticsResponseCache statisticsResponseCache;
+    // Only available in coordinator mode (statistics.cluster.peers).
+    private final StatisticsCoordinator statisticsCoordinator;
+    // Only available in pipeline mode (statistics.pipeline.enabled).
+    private final TransactionPipeline transactionPipeline;
+    // Only available when statistics.metrics.enabled is set.
+    private final StatisticsMetrics metrics;
 
-    public StatisticsController() {
-        StatisticsAggregator.initialize(System.currentTimeMillis());
+    public StatisticsController(ObjectMapper objectMapper, StatisticsProperties properties,
+                                StatisticsStream statisticsStream,
+                                ObjectProvider<TransactionPipeline> transactionPipeline,
+                                ObjectProvider<StatisticsMetrics> metrics,
+                                ObjectProvider<StatisticsPersistence> persistence,
+                                ObjectProvider<StatisticsCoordinator> statisticsCoordinator) {
+        this.keyedStatisticsAggregator = new KeyedStatisticsAggregator(properties.getWindow().toStatisticsWindow(),
+                properties.getKeyed().toMaxKeys(properties.getWindow().getBuckets()));
+        this.transactionBatchReader = new TransactionBatchReader(objectMapper.getFactory());
+        this.statisticsStream = statisticsStream;
+        this.statisticsResponseCache = new StatisticsResponseCache(objectMapper);
+        this.transactionPipeline = transactionPipeline.getIfAvailable();
+        this.metrics = metrics.getIfAvailable();
+        this.statisticsCoordinator = statisticsCoordinator.getIfAvailable();
+        StatisticsAggregator.setMetrics(this.metrics);
+        StatisticsAggregator.setAmounts(properties.getAmounts().toFixedPointAmounts());
+        // With persistence, the aggregator has already taken over the buckets stored by the previous run.
+        if (persistence.getIfAvailable() == null) {
+            StatisticsAggregator.initialize(properties.getWindow().toStatisticsWindow(), System.currentTimeMillis());
+        }
     }
 
     @RequestMapping(value = "/transactions", method = RequestMethod.POST)
     public ResponseEntity<Void> addTransaction(@RequestBody Transaction transaction) {
-        if (StatisticsAggregator.addTransaction(transaction, System.currentTimeMillis())) {
-            return new ResponseEntity<>(HttpStatus.OK);
+        if (metrics == null) {
+            return ingestTransaction(transaction);
+        }
+        long start = System.nanoTime();
+        try {
+            return ingestTransaction(transaction);
+        } finally {
+            metrics.transactionIngested(System.nanoTime() - start);
         }
-        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
+    // The keyed statistics are only updated once the transaction has been added or published, so a transaction
+    // refused (400 or 429) and retried is never counted twice for its key.
+    private ResponseEntity<Void> ingestTransaction(Transaction transaction) {
+        if (transaction.getKey() != null) {
+            KeyedStatisticsAggregator.checkKey(transaction.getKey());
+        }
+        long currentTimestampInMillis = System.currentTimeMillis();
+        ResponseEntity<Void> response;
+        if (transactionPipeline != null) {
+            response = publishTransaction(transaction, currentTimestampInMillis);
+        } else if (StatisticsAggregator.addTransaction(transaction, currentTimestampInMillis)) {
+            response = new ResponseEntity<>(HttpStatus.OK);
+        } else {
+            response = new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        if (transaction.getKey() != null && response.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+            keyedStatisticsAggregator.addTransaction(transaction.getKey(), transaction.getTimestamp(),
+                    transaction.getAmount(), currentTimestampInMillis);
+        }
+        return response;
+    }
+
+    // The consumer could only drop an amount out of the range of the fixed point mode, so it is refused here already.
+    private ResponseEntity<Void> publishTransaction(Transaction transaction, long currentTimestampInMillis) {
+        StatisticsAggregator.toUnits(transaction.getAmount());
+        if (!StatisticsAggregator.isWithinWindow(transaction.getTimestamp(), currentTimestampInMillis)) {
+            if (metrics != null) {
+                metrics.transactionsRejected(1);
+            }
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        if (transactionPipeline.publish(transaction.getTimestamp(), transaction.getAmount())) {
+            return new ResponseEntity<>(HttpStatus.ACCEPTED);
+        }
+        if (metrics != null) {
+            metrics.transactionThrottled();
+        }
+        return new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    // Accepts a JSON array of transactions or newline delimited JSON transactions (application/x-ndjson).
+    @RequestMapping(value = "/transactions/batch", method = RequestMethod.POST)
+    public TransactionBatchResult addTransactions(InputStream body) throws IOException {
+        long currentTimestampInMillis = System.currentTimeMillis();
+        TransactionBatch batch = transactionBatchReader.read(body, currentTimestampInMillis);
+        long accepted = StatisticsAggregator.addTransactions(batch);
+        batch.addKeyedTransactionsTo(keyedStatisticsAggregator, currentTimestampInMillis);
+        return new TransactionBatchResult(accepted, batch.getTransactions() - accepted);
+    }
+
+    // Accepts fixed 16 byte binary transaction records (see BinaryTransactionCodec).
+    @RequestMapping(value = "/transactions/batch", method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<TransactionBatchResult> addBinaryTransactions(InputStream body) throws IOException {
+        BinaryBatchBuffers buffers = BINARY_BATCH_BUFFERS.get();
+        TransactionBatch batch = buffers.batch;
+        batch.clear(System.currentTimeMillis());
+        ByteBuffer buffer = buffers.buffer;
+        buffer.clear();
+        int read;
+        // The servlet body can only be read into an array, the records are decoded from the direct buffer.
+        while ((read = body.read(buffers.chunk, 0, buffer.remaining())) >= 0) {
+            buffer.put(buffers.chunk, 0, read);
+            buffer.flip();
+            BinaryTransactionCodec.decode(buffer, batch);
+            buffer.compact();
+        }
+        if (buffer.position() > 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        long accepted = StatisticsAggregator.addTransactions(batch);
+        return new ResponseEntity<>(new TransactionBatchResult(accepted, batch.getTransactions() - accepted),
+                HttpStatus.OK);
+    }
+
+    // Percentiles of the amounts can be requested with e.g. ?percentiles=50,99,99.9, and the statistics of the last
+    // seconds only with e.g. ?window=10s or ?window=500ms. Several windows e.g. ?window=1s,10s,30s,60s are returned by
+    // window.
     @RequestMapping(value = "/statistics", method = RequestMethod.GET)
-    public Statistics getStatistics() {
-        return StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis());
+    public ResponseEntity<?> getStatistics(@RequestParam(required = false) double[] percentiles,
+                                           @RequestParam(required = false) String[] window)
+            throws IOException {
+        if (metrics == null) {
+            return computeStatistics(percentiles, window);
+        }
+        long start = System.nanoTime();
+        try {
+            return computeStatistics(percentiles, window);
+        } finally {
+            metrics.statisticsComputed(System.nanoTime() - start);
+        }
+    }
+
+    // Without percentiles, the statistics are served from the serialized response cache, or are the ones of the whole
+    // cluster in coordinator mode. The ETag lets a client which already has them get a 304 instead. Windows and
+    // percentiles are always computed over this node only.
+    private ResponseEntity<?> computeStatistics(double[] percentiles, String[] windows) throws IOException {
+        if (windows != null && windows.length == 1) {
+            return ResponseEntity.ok(StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis(),
+                    StatisticsWindow.parseLength(windows[0]), percentiles));
+        }
+        if (windows != null) {
+            long currentTimestampInMillis = System.currentTimeMillis();
+            Map<String, Statistics> statistics = new LinkedHashMap<>();
+            for (String window : windows) {
+                statistics.put(window, StatisticsAggregator.getAggregatedStatistics(currentTimestampInMillis,
+                        StatisticsWindow.parseLength(window), percentiles));
+            }
+            return ResponseEntity.ok(statistics);
+        }
+        if (percentiles != null) {
+            return ResponseEntity.ok(
+                    StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis(), percentiles));
+        }
+        StatisticsResponseCache.Response response = statisticsCoordinator != null
+                ? statisticsCoordinator.get(System.currentTimeMillis())
+                : statisticsResponseCache.get(System.currentTimeMillis());
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .eTag(response.getETag())
+                .body(response.getBody());
+    }
+
+    // The per bucket statistics of this node, for a coordinator (see StatisticsPartialState).
+    @RequestMapping(value = "/statistics/partial", method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] getPartialState() {
+        long currentTimestampInMillis = System.currentTimeMillis();
+        return StatisticsPartialState.encode(StatisticsAggregator.getStatistics(currentTimestampInMillis),
+                StatisticsAggregator.getWindow(), StatisticsAggregator.getAmounts(), currentTimestampInMillis);
+    }
+
+    // Server-sent events of the statistics, one per second.
+    @RequestMapping(value = "/statistics/stream", method = RequestMethod.GET)
+    public ResponseBodyEmitter streamStatistics() {
+        return statisticsStream.subscribe();
+    }
+
+    // Minute or hour history beyond the window, e.g. ?from=1478192204000&to=1478278604000&step=3600000 (epoch
+    // milliseconds, the step being a whole number of minutes).
+    @RequestMapping(value = "/statistics/range", method = RequestMethod.GET)
+    public List<TimestampedStatistics> getRangeStatistics(@RequestParam long from, @RequestParam long to,
+                                                          @RequestParam long step,
+                                                          @RequestParam(required = false) double[] percentiles) {
+        return StatisticsAggregator.getRange(from, to, step, percentiles, System.currentTimeMillis());
+    }
+
+    @RequestMapping(value = "/statistics/{key:.+}", method = RequestMethod.GET)
+    public Statistics getStatistics(@PathVariable String key) {
+        return keyedStatisticsAggregator.getStatistics(key, System.currentTimeMillis());
+    }
+
+    // The k keys with the highest sum in the window, highest first.
+    @RequestMapping(value = "/statistics/top/{k}", method = RequestMethod.GET)
+    public List<KeyedStatistics> getTopStatistics(@PathVariable int k) {
+        return keyedStatisticsAggregator.getTopKeysBySum(k, System.currentTimeMillis());
+    }
+
+    @ExceptionHandler({JsonProcessingException.class, IllegalArgumentException.class})
+    public ResponseEntity<Void> handleBadRequest() {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    private static final class BinaryBatchBuffers {
+        private final byte[] chunk = new byte[BINARY_BUFFER_BYTES];
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BINARY_BUFFER_BYTES);
+        private final TransactionBatch batch = new TransactionBatch(0);
     }
 }
@@ -0,0 +1,98 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Cluster wide statistics: the per bucket statistics of this node are merged with the partial states fetched in
+// parallel from its peers, aligned by bucket. The merged statistics are cached for the current bucket. A peer which
+// cannot be reached within the timeout is left out of them.
+final class StatisticsCoordinator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsCoordinator.class);
+    static final String PARTIAL_STATE_PATH = "/api/v1/statistics/partial";
+
+    private final List<String> peers;
+    private final ObjectMapper objectMapper;
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+    private volatile StatisticsResponseCache.Response response =
+            new StatisticsResponseCache.Response(Long.MIN_VALUE, 0, null, null);
+
+    StatisticsCoordinator(List<String> peers, int timeoutMillis, ObjectMapper objectMapper) {
+        this.peers = peers;
+        this.objectMapper = objectMapper;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        this.restTemplate = new RestTemplate(requestFactory);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, peers.size()), runnable -> {
+            Thread thread = new Thread(runnable, "statistics-coordinator-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    // The peers are fetched without holding the monitor, which only guards the publication of the response, so a
+    // slow peer never holds up the requests answered from the cached one.
+    StatisticsResponseCache.Response get(long currentTimestampInMillis) throws JsonProcessingException {
+        long currentTick = StatisticsAggregator.getWindow().tickOf(currentTimestampInMillis);
+        StatisticsResponseCache.Response response = this.response;
+        if (response.getTick() == currentTick) {
+            return response;
+        }
+        byte[] body = objectMapper.writeValueAsBytes(getStatistics(currentTimestampInMillis));
+        response = new StatisticsResponseCache.Response(currentTick, 0, body, "\"cluster-" + currentTick + "\"");
+        synchronized (this) {
+            if (currentTick > this.response.getTick()) {
+                this.response = response;
+            }
+        }
+        return response;
+    }
+
+    // A peer which cannot be reached, answers an empty body or a partial state of another fixed point scale is left
+    // out.
+    Statistics getStatistics(long currentTimestampInMillis) {
+        List<CompletableFuture<byte[]>> partialStates = peers.stream()
+                .map(peer -> CompletableFuture.supplyAsync(
+                        () -> restTemplate.getForObject(peer + PARTIAL_STATE_PATH, byte[].class), executor))
+                .collect(Collectors.toList());
+        Statistics[] statistics = StatisticsAggregator.getStatistics(currentTimestampInMillis);
+        FixedPointAmounts amounts = StatisticsAggregator.getAmounts();
+        for (int i = 0; i < peers.size(); i++) {
+            try {
+                byte[] partialState = partialStates.get(i).join();
+                if (partialState == null || partialState.length == 0) {
+                    throw new IllegalArgumentException("Empty partial state");
+                }
+                StatisticsPartialState.decode(ByteBuffer.wrap(partialState), statistics,
+                        StatisticsAggregator.getWindow(), amounts, currentTimestampInMillis);
+            } catch (CompletionException | IllegalArgumentException e) {
+                LOGGER.warn("Leaving out the statistics of {}: {}", peers.get(i), e.getMessage());
+            }
+        }
+        Statistics merged = new Statistics();
+        for (Statistics bucketStatistics : statistics) {
+            merged.addStatistics(bucketStatistics);
+        }
+        // In fixed point mode, the exact sum of the minor units of every node, like a single node returns it.
+        return amounts == null ? merged : amounts.render(merged);
+    }
+}
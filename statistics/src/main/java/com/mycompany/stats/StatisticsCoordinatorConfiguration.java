@@ -0,0 +1,18 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Coordinator mode is only enabled when peers are configured, e.g. statistics.cluster.peers=http://localhost:8081
+@Configuration
+@ConditionalOnProperty("statistics.cluster.peers")
+class StatisticsCoordinatorConfiguration {
+
+    @Bean(destroyMethod = "stop")
+    StatisticsCoordinator statisticsCoordinator(StatisticsProperties properties, ObjectMapper objectMapper) {
+        StatisticsProperties.Cluster cluster = properties.getCluster();
+        return new StatisticsCoordinator(cluster.getPeers(), cluster.getTimeoutMillis(), objectMapper);
+    }
+}
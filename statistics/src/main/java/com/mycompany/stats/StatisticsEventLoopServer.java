@@ -0,0 +1,449 @@
+package com.mycompany.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Non-blocking mode of the lightweight server (--server.mode=event-loop): POST /api/v1/transactions and
+// GET /api/v1/statistics served by one selector thread per core over keep-alive HTTP/1.1 connections, pipelining
+// included. A connection only holds its buffers, never a thread, so the number of connections is bounded by memory and
+// file descriptors rather than by a pool. Requests are decoded from the bytes as they arrive and handled on the event
+// loop itself, which may block it briefly: adding a transaction yields when the slot of its bucket is busy in every
+// stripe of the aggregator, while the statistics are served from StatisticsResponseCache. The other endpoints and the
+// query parameters of GET /statistics are only served by the other modes, and transactions are not broken down by
+// key. It serves the aggregator it is given, the one of the JVM (StatisticsAggregator) in --server.mode=event-loop.
+final class StatisticsEventLoopServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsEventLoopServer.class);
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int BUFFER_BYTES = 16 * 1024;
+    // Responses waiting for the socket beyond which a connection stops handling and reading requests.
+    private static final int MAX_PENDING_OUTPUT_BYTES = 64 * 1024;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    private final StripedStatisticsAggregator aggregator;
+    private final int port;
+    private final EventLoop[] eventLoops;
+    private final StatisticsResponseCache statisticsResponseCache;
+    private ServerSocketChannel serverChannel;
+
+    StatisticsEventLoopServer(StripedStatisticsAggregator aggregator, int port, int eventLoops) {
+        this.aggregator = aggregator;
+        this.port = port;
+        this.eventLoops = new EventLoop[eventLoops];
+        this.statisticsResponseCache = new StatisticsResponseCache(aggregator,
+                statistics -> StatisticsJson.write(statistics).getBytes(StandardCharsets.UTF_8));
+    }
+
+    void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(i);
+        }
+        // The first loop also accepts, and hands the connections out to every loop in turn.
+        serverChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+    }
+
+    void stop() {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.stop();
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close the event loop server", e);
+        }
+    }
+
+    int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private final class EventLoop {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private int next;
+        private volatile boolean running = true;
+
+        private EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            // Not a daemon: the event loops keep the JVM running, like the threads of the HttpServer do.
+            this.thread = new Thread(this::run, "statistics-event-loop-" + index);
+        }
+
+        private void stop() {
+            running = false;
+            selector.wakeup();
+            try {
+                thread.join();
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close an event loop", e);
+            }
+        }
+
+        private void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    for (SocketChannel channel = accepted.poll(); channel != null; channel = accepted.poll()) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection());
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Event loop failed to select", e);
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    return;
+                }
+                Connection connection = (Connection) key.attachment();
+                if (key.isWritable()) {
+                    connection.write(key);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    connection.read(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Closing connection", e);
+                close(key);
+            }
+        }
+
+        // A connection failing to be set up is closed, the server channel stays open.
+        private void accept() {
+            try {
+                for (SocketChannel channel = serverChannel.accept(); channel != null;
+                     channel = serverChannel.accept()) {
+                    try {
+                        channel.configureBlocking(false);
+                        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    } catch (IOException e) {
+                        LOGGER.debug("Failed to set up connection", e);
+                        channel.close();
+                        continue;
+                    }
+                    EventLoop eventLoop = eventLoops[next];
+                    next = next + 1 < eventLoops.length ? next + 1 : 0;
+                    if (eventLoop == this) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection());
+                    } else {
+                        eventLoop.accepted.add(channel);
+                        eventLoop.selector.wakeup();
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Event loop failed to accept", e);
+            }
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close connection", e);
+        }
+    }
+
+    // Bytes read are decoded in place: a request is handled as soon as its headers and Content-Length bytes of body
+    // are in the buffer, and responses are queued in the output buffer until the socket takes them. Once more than
+    // MAX_PENDING_OUTPUT_BYTES of responses are waiting, the requests left in the input wait too and OP_READ is
+    // cleared until the socket has taken enough of them, so a client pipelining requests without reading its
+    // responses only stalls its own connection, with a bounded output buffer, and the kernel pushes back on it.
+    private final class Connection {
+        private ByteBuffer input = ByteBuffer.allocate(BUFFER_BYTES);
+        private ByteBuffer output = ByteBuffer.allocate(BUFFER_BYTES);
+        // Position in the input where the end of the headers is looked for next.
+        private int scanned;
+        private boolean closing;
+
+        private void read(SelectionKey key) throws IOException {
+            if (((SocketChannel) key.channel()).read(input) < 0) {
+                close(key);
+                return;
+            }
+            write(key);
+        }
+
+        // Also handles the requests left in the input once the output is below MAX_PENDING_OUTPUT_BYTES again, until
+        // the input is exhausted or the socket is full.
+        private void write(SelectionKey key) throws IOException {
+            boolean flushed;
+            boolean held;
+            do {
+                input.flip();
+                while (!closing && output.position() < MAX_PENDING_OUTPUT_BYTES && handleRequest()) {
+                    // Pipelined requests.
+                }
+                held = output.position() >= MAX_PENDING_OUTPUT_BYTES;
+                scanned = Math.max(0, scanned - input.position());
+                input.compact();
+                output.flip();
+                ((SocketChannel) key.channel()).write(output);
+                flushed = !output.hasRemaining();
+                output.compact();
+            } while (flushed && held && !closing);
+            if (flushed && closing) {
+                close(key);
+                return;
+            }
+            int interestOps = flushed ? 0 : SelectionKey.OP_WRITE;
+            if (!closing && output.position() < MAX_PENDING_OUTPUT_BYTES) {
+                interestOps |= SelectionKey.OP_READ;
+            }
+            key.interestOps(interestOps);
+        }
+
+        // Handles the request at the start of the input, if complete, and returns whether it did.
+        private boolean handleRequest() {
+            int start = input.position();
+            int headerEnd = indexOf(HEADER_END, Math.max(start, scanned), input.limit());
+            if (headerEnd < 0) {
+                scanned = Math.max(start, input.limit() - HEADER_END.length + 1);
+                if (input.remaining() >= MAX_HEADER_BYTES) {
+                    fail(431);
+                }
+                return false;
+            }
+            Request request;
+            try {
+                request = new Request(new String(input.array(), start, headerEnd - start,
+                        StandardCharsets.ISO_8859_1));
+            } catch (IllegalArgumentException e) {
+                fail(400);
+                return false;
+            }
+            if (request.contentLength < 0 || request.chunked) {
+                fail(request.chunked ? 411 : 400);
+                return false;
+            }
+            if (request.contentLength > MAX_BODY_BYTES) {
+                fail(413);
+                return false;
+            }
+            int bodyStart = headerEnd + HEADER_END.length;
+            if (bodyStart + request.contentLength > input.limit()) {
+                scanned = headerEnd;
+                if (bodyStart + request.contentLength > input.capacity()) {
+                    grow(bodyStart - start + request.contentLength);
+                }
+                return false;
+            }
+            String body = new String(input.array(), bodyStart, request.contentLength, StandardCharsets.UTF_8);
+            input.position(bodyStart + request.contentLength);
+            scanned = input.position();
+            closing = request.close;
+            try {
+                route(request, body);
+            } catch (IllegalArgumentException e) {
+                respond(400, null, null);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Failed to handle {} {}", request.method, request.target, e);
+                respond(500, null, null);
+            }
+            return true;
+        }
+
+        // The request cannot be read any further: answered, then the connection is closed.
+        private void fail(int status) {
+            closing = true;
+            respond(status, null, null);
+        }
+
+        private void route(Request request, String body) throws IOException {
+            int query = request.target.indexOf('?');
+            String path = query < 0 ? request.target : request.target.substring(0, query);
+            if (query >= 0 && path.equals("/api/v1/statistics")) {
+                throw new IllegalArgumentException("Parameters are only served by the other modes");
+            }
+            if (path.equals("/api/v1/transactions")) {
+                if (allow(request, "POST")) {
+                    boolean added = aggregator.addTransaction(StatisticsJson.readTransaction(body),
+                            System.currentTimeMillis());
+                    respond(added ? 200 : 204, null, null);
+                }
+            } else if (path.equals("/api/v1/statistics")) {
+                if (allow(request, "GET")) {
+                    StatisticsResponseCache.Response response =
+                            statisticsResponseCache.get(System.currentTimeMillis());
+                    String eTag = "ETag: " + response.getETag() + "\r\n";
+                    if (response.getETag().equals(request.ifNoneMatch)) {
+                        respond(304, eTag, null);
+                    } else {
+                        respond(200, eTag, response.getBody());
+                    }
+                }
+            } else {
+                respond(404, null, null);
+            }
+        }
+
+        private boolean allow(Request request, String method) {
+            if (request.method.equals(method)) {
+                return true;
+            }
+            respond(405, "Allow: " + method + "\r\n", null);
+            return false;
+        }
+
+        // Queues the response, the headers given being whole lines. A body is always JSON.
+        private void respond(int status, String headers, byte[] body) {
+            StringBuilder head = new StringBuilder(128).append("HTTP/1.1 ").append(status).append(' ')
+                    .append(reasonOf(status)).append("\r\n");
+            if (headers != null) {
+                head.append(headers);
+            }
+            if (body != null) {
+                head.append("Content-Type: application/json;charset=UTF-8\r\n");
+            }
+            if (status != 204 && status != 304) {
+                head.append("Content-Length: ").append(body != null ? body.length : 0).append("\r\n");
+            }
+            if (closing) {
+                head.append("Connection: close\r\n");
+            }
+            byte[] bytes = head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+            int length = bytes.length + (body != null ? body.length : 0);
+            if (output.remaining() < length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + length));
+                output.flip();
+                output = grown.put(output);
+            }
+            output.put(bytes);
+            if (body != null) {
+                output.put(body);
+            }
+        }
+
+        private void grow(int bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(input.capacity() * 2, bytes));
+            int offset = input.position();
+            scanned -= offset;
+            input = grown.put(input);
+            input.flip();
+        }
+
+        private int indexOf(byte[] pattern, int from, int to) {
+            byte[] bytes = input.array();
+            for (int i = from; i <= to - pattern.length; i++) {
+                int j = 0;
+                while (j < pattern.length && bytes[i + j] == pattern[j]) {
+                    j++;
+                }
+                if (j == pattern.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static String reasonOf(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 411:
+                return "Length Required";
+            case 413:
+                return "Payload Too Large";
+            case 431:
+                return "Request Header Fields Too Large";
+            default:
+                return "Internal Server Error";
+        }
+    }
+
+    // Request line and the headers this server cares about.
+    private static final class Request {
+        private final String method;
+        private final String target;
+        private int contentLength;
+        private boolean chunked;
+        private boolean close;
+        private String ifNoneMatch;
+
+        private Request(String head) {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3) {
+                throw new IllegalArgumentException("Invalid request line: " + lines[0]);
+            }
+            method = requestLine[0];
+            target = requestLine[1];
+            close = !requestLine[2].equals("HTTP/1.1");
+            for (int i = 1; i < lines.length; i++) {
+                int separator = lines[i].indexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, separator).trim();
+                String value = lines[i].substring(separator + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = parseContentLength(value);
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    chunked = !value.equalsIgnoreCase("identity");
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    close = value.equalsIgnoreCase("close") || (close && !value.equalsIgnoreCase("keep-alive"));
+                } else if (name.equalsIgnoreCase("If-None-Match")) {
+                    ifNoneMatch = value;
+                }
+            }
+        }
+
+        private static int parseContentLength(String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.mycompany.stats;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Lightweight alternative to StatisticsApplication, for a fast startup and a small footprint: the same aggregator and
+// the same endpoints and status codes as StatisticsController, served by the JDK's HttpServer on a fixed pool of
+// threads with the JSON written by hand (StatisticsJson). It takes the same --server.port, --statistics.window.*,
+// --statistics.keyed.* and --statistics.amounts.scale arguments, plus --server.threads. The optional features
+// of the Spring mode (stream, coordinator, pipeline, metrics, persistence and the binary listener) are not available.
+// With --server.mode=event-loop, the two main endpoints are served without blocking by StatisticsEventLoopServer
+// instead, --server.threads then being the number of event loops.
+public final class StatisticsHttpServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsHttpServer.class);
+    private static final String PREFIX = "/api/v1";
+    private static final String APPLICATION_JSON = "application/json;charset=UTF-8";
+    private static final String APPLICATION_OCTET_STREAM = "application/octet-stream";
+    private static final int BUFFER_BYTES = 8 * 1024;
+
+    private final int port;
+    private final int threads;
+    private final KeyedStatisticsAggregator keyedStatisticsAggregator;
+    private final StatisticsResponseCache statisticsResponseCache = new StatisticsResponseCache(
+            statistics -> StatisticsJson.write(statistics).getBytes(StandardCharsets.UTF_8));
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // The keyed statistics share the window of the aggregator, which must be initialized first.
+    StatisticsHttpServer(int port, int threads, int maxKeys) {
+        this.port = port;
+        this.threads = threads;
+        this.keyedStatisticsAggregator = new KeyedStatisticsAggregator(StatisticsAggregator.getWindow(), maxKeys);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> arguments = parseArguments(args);
+        StatisticsProperties.Window window = new StatisticsProperties.Window();
+        window.setBucketMillis(Long.parseLong(arguments.getOrDefault("statistics.window.bucket-millis",
+                String.valueOf(window.getBucketMillis()))));
+        window.setBuckets(Integer.parseInt(arguments.getOrDefault("statistics.window.buckets",
+                String.valueOf(window.getBuckets()))));
+        StatisticsProperties.Keyed keyed = new StatisticsProperties.Keyed();
+        keyed.setMaxBytes(Long.parseLong(arguments.getOrDefault("statistics.keyed.max-bytes",
+                String.valueOf(keyed.getMaxBytes()))));
+        keyed.setMaxKeys(Integer.parseInt(arguments.getOrDefault("statistics.keyed.max-keys",
+                String.valueOf(keyed.getMaxKeys()))));
+        StatisticsProperties.Amounts amounts = new StatisticsProperties.Amounts();
+        if (arguments.containsKey("statistics.amounts.scale")) {
+            amounts.setScale(Integer.parseInt(arguments.get("statistics.amounts.scale")));
+        }
+        StatisticsAggregator.setAmounts(amounts.toFixedPointAmounts());
+        StatisticsAggregator.initialize(window.toStatisticsWindow(), System.currentTimeMillis());
+        int port = Integer.parseInt(arguments.getOrDefault("server.port", "8080"));
+        if ("event-loop".equals(arguments.get("server.mode"))) {
+            // One event loop per core by default, see StatisticsEventLoopServer.
+            StatisticsEventLoopServer server = new StatisticsEventLoopServer(StatisticsAggregator.getDefault(), port,
+                    Integer.parseInt(arguments.getOrDefault("server.threads",
+                            String.valueOf(Runtime.getRuntime().availableProcessors()))));
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "statistics-event-loop-shutdown"));
+            LOGGER.info("Started StatisticsEventLoopServer on port {} (JVM running for {} ms)", server.getPort(),
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+            return;
+        }
+        enableNoDelay();
+        StatisticsHttpServer server = new StatisticsHttpServer(port,
+                Integer.parseInt(arguments.getOrDefault("server.threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors() * 2))),
+                keyed.toMaxKeys(window.getBuckets()));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "statistics-http-server-shutdown"));
+        LOGGER.info("Started StatisticsHttpServer on port {} (JVM running for {} ms)", server.getPort(),
+                ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    // A response with a body is written as its headers then its body: without TCP_NODELAY, the body waits for the
+    // client's delayed ACK of the headers, about 40ms. A JVM wide setting, read when the first HttpServer is created,
+    // so it is left to the process embedding a server: this main, or -Dsun.net.httpserver.nodelay=true.
+    static void enableNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    // Arguments of the form --name=value, the others are ignored like Spring Boot does.
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (arg.startsWith("--") && separator > 2) {
+                arguments.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return arguments;
+    }
+
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(PREFIX + "/", this::handle);
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            route(exchange, exchange.getRequestURI().getPath().substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            exchange.sendResponseHeaders(400, -1);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to handle {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Same mappings as StatisticsController, a path segment of /statistics being a key unless it is one of the others.
+    private void route(HttpExchange exchange, String path) throws IOException {
+        if (path.equals("/transactions")) {
+            if (allow(exchange, "POST")) {
+                addTransaction(exchange);
+            }
+        } else if (path.equals("/transactions/batch")) {
+            if (allow(exchange, "POST")) {
+                addTransactions(exchange);
+            }
+        } else if (path.equals("/statistics")) {
+            if (allow(exchange, "GET")) {
+                getStatistics(exchange, parseQuery(exchange));
+            }
+        } else if (path.equals("/statistics/partial")) {
+            if (allow(exchange, "GET")) {
+                long currentTimestampInMillis = System.currentTimeMillis();
+                send(exchange, APPLICATION_OCTET_STREAM, StatisticsPartialState.encode(
+                        StatisticsAggregator.getStatistics(currentTimestampInMillis),
+                        StatisticsAggregator.getWindow(), StatisticsAggregator.getAmounts(), currentTimestampInMillis));
+            }
+        } else if (path.equals("/statistics/range")) {
+            if (allow(exchange, "GET")) {
+                getRangeStatistics(exchange, parseQuery(exchange));
+            }
+        } else if (path.startsWith("/statistics/top/") && path.indexOf('/', "/statistics/top/".length()) < 0) {
+            if (allow(exchange, "GET")) {
+                int k = Integer.parseInt(path.substring("/statistics/top/".length()));
+                send(exchange, StatisticsJson.writeKeyed(
+                        keyedStatisticsAggregator.getTopKeysBySum(k, System.currentTimeMillis())));
+            }
+        } else if (path.startsWith("/statistics/") && path.indexOf('/', "/statistics/".length()) < 0
+                && !path.equals("/statistics/") && !path.equals("/statistics/stream")) {
+            if (allow(exchange, "GET")) {
+                String key = path.substring("/statistics/".length());
+                send(exchange, StatisticsJson.write(
+                        keyedStatisticsAggregator.getStatistics(key, System.currentTimeMillis())));
+            }
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+        }
+    }
+
+    private static boolean allow(HttpExchange exchange, String method) throws IOException {
+        if (exchange.getRequestMethod().equals(method)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", method);
+        exchange.sendResponseHeaders(405, -1);
+        return false;
+    }
+
+    private void addTransaction(HttpExchange exchange) throws IOException {
+        Transaction transaction = StatisticsJson.readTransaction(readBody(exchange));
+        if (transaction.getKey() != null) {
+            KeyedStatisticsAggregator.checkKey(transaction.getKey());
+        }
+        long currentTimestampInMillis = System.currentTimeMillis();
+        boolean added = StatisticsAggregator.addTransaction(transaction, currentTimestampInMillis);
+        // After the aggregator, which refuses an invalid amount by throwing, like StatisticsController.
+        if (transaction.getKey() != null) {
+            keyedStatisticsAggregator.addTransaction(transaction.getKey(), transaction.getTimestamp(),
+                    transaction.getAmount(), currentTimestampInMillis);
+        }
+        exchange.sendResponseHeaders(added ? 200 : 204, -1);
+    }
+
+    // A JSON array, newline delimited JSON or, as application/octet-stream, binary records (see
+    // BinaryTransactionCodec).
+    private void addTransactions(HttpExchange exchange) throws IOException {
+        long currentTimestampInMillis = System.currentTimeMillis();
+        TransactionBatch batch = new TransactionBatch(currentTimestampInMillis);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith(APPLICATION_OCTET_STREAM)) {
+            if (!readBinaryTransactions(exchange.getRequestBody(), batch)) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+        } else {
+            StatisticsJson.readTransactions(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8),
+                    batch);
+        }
+        long accepted = StatisticsAggregator.addTransactions(batch);
+        batch.addKeyedTransactionsTo(keyedStatisticsAggregator, currentTimestampInMillis);
+        send(exchange, StatisticsJson.write(
+                new TransactionBatchResult(accepted, batch.getTransactions() - accepted)));
+    }
+
+    // Returns false if the body ends with a partial record.
+    private static boolean readBinaryTransactions(InputStream body, TransactionBatch batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        int read;
+        while ((read = body.read(buffer.array(), buffer.position(), buffer.remaining())) >= 0) {
+            buffer.position(buffer.position() + read);
+            buffer.flip();
+            BinaryTransactionCodec.decode(buffer, batch);
+            buffer.compact();
+        }
+        return buffer.position() == 0;
+    }
+
+    private void getStatistics(HttpExchange exchange, Map<String, List<String>> parameters) throws IOException {
+        double[] percentiles = parsePercentiles(parameters.get("percentiles"));
+        List<String> windows = parameters.get("window");
+        long currentTimestampInMillis = System.currentTimeMillis();
+        if (windows != null && windows.size() == 1) {
+            send(exchange, StatisticsJson.write(StatisticsAggregator.getAggregatedStatistics(currentTimestampInMillis,
+                    StatisticsWindow.parseLength(windows.get(0)), percentiles)));
+        } else if (windows != null) {
+            Map<String, Statistics> statistics = new LinkedHashMap<>();
+            for (String window : windows) {
+                statistics.put(window, StatisticsAggregator.getAggregatedStatistics(currentTimestampInMillis,
+                        StatisticsWindow.parseLength(window), percentiles));
+            }
+            send(exchange, StatisticsJson.write(statistics));
+        } else if (percentiles != null) {
+            send(exchange, StatisticsJson.write(
+                    StatisticsAggregator.getAggregatedStatistics(currentTimestampInMillis, percentiles)));
+        } else {
+            StatisticsResponseCache.Response response = statisticsResponseCache.get(currentTimestampInMillis);
+            exchange.getResponseHeaders().set("ETag", response.getETag());
+            if (response.getETag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                send(exchange, APPLICATION_JSON, response.getBody());
+            }
+        }
+    }
+
+    private static void getRangeStatistics(HttpExchange exchange, Map<String, List<String>> parameters)
+            throws IOException {
+        send(exchange, StatisticsJson.writeTimestamped(StatisticsAggregator.getRange(
+                Long.parseLong(getParameter(parameters, "from")), Long.parseLong(getParameter(parameters, "to")),
+                Long.parseLong(getParameter(parameters, "step")), parsePercentiles(parameters.get("percentiles")),
+                System.currentTimeMillis())));
+    }
+
+    private static String getParameter(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        if (values == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return values.get(0);
+    }
+
+    private static double[] parsePercentiles(List<String> values) {
+        return values == null ? null : values.stream().mapToDouble(Double::parseDouble).toArray();
+    }
+
+    // Query parameters by name, a comma separated value being split into several like Spring binds arrays.
+    private static Map<String, List<String>> parseQuery(HttpExchange exchange) throws IOException {
+        Map<String, List<String>> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            List<String> values = parameters.computeIfAbsent(
+                    URLDecoder.decode(parameter.substring(0, separator), "UTF-8"), name -> new ArrayList<>());
+            for (String value : URLDecoder.decode(parameter.substring(separator + 1), "UTF-8").split(",")) {
+                if (!value.isEmpty()) {
+                    values.add(value);
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_BYTES];
+        InputStream inputStream = exchange.getRequestBody();
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, String json) throws IOException {
+        send(exchange, APPLICATION_JSON, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        // A length of 0 would mean a chunked body for the HttpServer, -1 means none.
+        exchange.sendResponseHeaders(200, body.length > 0 ? body.length : -1);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
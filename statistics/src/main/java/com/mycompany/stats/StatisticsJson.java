@@ -0,0 +1,400 @@
+package com.mycompany.stats;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+// Hand-written JSON of the lightweight server (StatisticsHttpServer), which runs without Spring and Jackson. Documents
+// are written field by field in the order Jackson writes them for the Spring mode, numbers as Double.toString /
+// Long.toString do like Jackson does, so both modes answer the same bytes. Reading is as lenient as the Spring mode:
+// unknown fields are skipped, and a missing or null field of a single transaction defaults to 0.
+final class StatisticsJson {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int BUFFER_CHARS = 8 * 1024;
+
+    private StatisticsJson() {
+    }
+
+    static Transaction readTransaction(String json) {
+        Parser parser = new Parser(json);
+        parser.readTransaction();
+        parser.expectEnd();
+        return new Transaction(parser.timestamp, parser.amount, parser.key);
+    }
+
+    // A JSON array of transactions or newline delimited transactions, each of them requiring a timestamp and an
+    // amount, streamed straight into the batch (see TransactionBatchReader): only a buffer of the body is held.
+    static void readTransactions(Reader json, TransactionBatch batch) throws IOException {
+        Parser parser = new Parser(json);
+        try {
+            if (parser.consume('[')) {
+                if (!parser.consume(']')) {
+                    do {
+                        readTransaction(parser, batch);
+                    } while (parser.consume(','));
+                    parser.expect(']');
+                }
+                parser.expectEnd();
+                return;
+            }
+            while (!parser.isAtEnd()) {
+                readTransaction(parser, batch);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void readTransaction(Parser parser, TransactionBatch batch) {
+        if (!parser.readTransaction()) {
+            throw new IllegalArgumentException("Expected a transaction with a timestamp and an amount");
+        }
+        batch.addTransaction(parser.key, parser.timestamp, parser.amount);
+    }
+
+    static String write(Statistics statistics) {
+        return writeFields(new StringBuilder().append('{'), statistics).append('}').toString();
+    }
+
+    // Statistics by window, in the order of the map.
+    static String write(Map<String, Statistics> statistics) {
+        StringBuilder json = new StringBuilder().append('{');
+        for (Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+            writeString(json.length() > 1 ? json.append(',') : json, entry.getKey()).append(":{");
+            writeFields(json, entry.getValue()).append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    static String writeTimestamped(List<TimestampedStatistics> points) {
+        StringBuilder json = new StringBuilder().append('[');
+        for (TimestampedStatistics point : points) {
+            (json.length() > 1 ? json.append(',') : json).append("{\"timestamp\":").append(point.getTimestamp())
+                    .append(',');
+            writeFields(json, point.getStatistics()).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    static String writeKeyed(List<KeyedStatistics> keys) {
+        StringBuilder json = new StringBuilder().append('[');
+        for (KeyedStatistics key : keys) {
+            writeString((json.length() > 1 ? json.append(',') : json).append("{\"key\":"), key.getKey()).append(',');
+            writeFields(json, key.getStatistics()).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    static String write(TransactionBatchResult result) {
+        return "{\"accepted\":" + result.getAccepted() + ",\"expired\":" + result.getExpired() + "}";
+    }
+
+    private static StringBuilder writeFields(StringBuilder json, Statistics statistics) {
+        writeNumber(json.append("\"sum\":"), statistics.getSum());
+        writeNumber(json.append(",\"min\":"), statistics.getMin());
+        writeNumber(json.append(",\"max\":"), statistics.getMax());
+        json.append(",\"count\":").append(statistics.getCount());
+        writeNumber(json.append(",\"average\":"), statistics.getAverage());
+        if (statistics.getPercentiles() != null) {
+            json.append(",\"percentiles\":{");
+            boolean first = true;
+            for (Map.Entry<String, Double> percentile : statistics.getPercentiles().entrySet()) {
+                writeString(first ? json : json.append(','), percentile.getKey()).append(':');
+                writeNumber(json, percentile.getValue());
+                first = false;
+            }
+            json.append('}');
+        }
+        return json;
+    }
+
+    // Jackson quotes NaN and the infinities, which have no JSON number.
+    private static StringBuilder writeNumber(StringBuilder json, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return json.append('"').append(value).append('"');
+        }
+        return json.append(value);
+    }
+
+    private static StringBuilder writeString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c >= 0x20) {
+                json.append(c);
+            } else if (c == '\b') {
+                json.append("\\b");
+            } else if (c == '\t') {
+                json.append("\\t");
+            } else if (c == '\n') {
+                json.append("\\n");
+            } else if (c == '\f') {
+                json.append("\\f");
+            } else if (c == '\r') {
+                json.append("\\r");
+            } else {
+                json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return json.append('"');
+    }
+
+    // Reads a String or, through a buffer, a Reader.
+    private static final class Parser {
+        private final Reader reader;
+        private final char[] buffer;
+        private int position;
+        private int limit;
+        // Number of chars read before the buffer, for the errors.
+        private long offset;
+        // The fields of the last transaction read.
+        private long timestamp;
+        private double amount;
+        private String key;
+
+        private Parser(String json) {
+            this.reader = null;
+            this.buffer = json.toCharArray();
+            this.limit = buffer.length;
+        }
+
+        private Parser(Reader reader) {
+            this.reader = reader;
+            this.buffer = new char[BUFFER_CHARS];
+        }
+
+        // Returns whether the transaction had both a timestamp and an amount.
+        private boolean readTransaction() {
+            timestamp = 0;
+            amount = 0.0;
+            key = null;
+            boolean hasTimestamp = false;
+            boolean hasAmount = false;
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    String field = readString();
+                    expect(':');
+                    if ("timestamp".equals(field)) {
+                        String value = readScalar();
+                        timestamp = value == null ? 0 : parseLong(value);
+                        hasTimestamp = true;
+                    } else if ("amount".equals(field)) {
+                        String value = readScalar();
+                        amount = value == null ? 0.0 : Double.parseDouble(value);
+                        hasAmount = true;
+                    } else if ("key".equals(field)) {
+                        key = readScalar();
+                    } else {
+                        skipValue();
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            return hasTimestamp && hasAmount;
+        }
+
+        // A long given as a number with a fraction or an exponent is truncated, as Jackson does.
+        private static long parseLong(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    return (long) Double.parseDouble(value);
+                }
+            }
+            return Long.parseLong(value);
+        }
+
+        // The text of a string, number or boolean, null for null.
+        private String readScalar() {
+            if (peek() == '"') {
+                return readString();
+            }
+            String literal = readLiteral();
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private void skipValue() {
+            char c = peek();
+            if (c == '"') {
+                readString();
+            } else if (consume('{')) {
+                if (!consume('}')) {
+                    do {
+                        readString();
+                        expect(':');
+                        skipValue();
+                    } while (consume(','));
+                    expect('}');
+                }
+            } else if (consume('[')) {
+                if (!consume(']')) {
+                    do {
+                        skipValue();
+                    } while (consume(','));
+                    expect(']');
+                }
+            } else {
+                readLiteral();
+            }
+        }
+
+        private String readLiteral() {
+            StringBuilder value = new StringBuilder();
+            int c;
+            while ((c = peekChar()) >= 0 && isLiteral((char) c)) {
+                value.append((char) c);
+                position++;
+            }
+            String literal = value.toString();
+            if (literal.isEmpty()) {
+                throw error("Expected a value");
+            }
+            if (!"true".equals(literal) && !"false".equals(literal) && !"null".equals(literal)) {
+                Double.parseDouble(literal);
+            }
+            return literal;
+        }
+
+        private static boolean isLiteral(char c) {
+            return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == '-' || c == '+' || c == '.';
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = nextChar("Unterminated string");
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = nextChar("Unterminated string");
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            hex[i] = nextChar("Invalid unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append(escaped);
+                        break;
+                    default:
+                        throw error("Invalid escape");
+                }
+            }
+        }
+
+        private char peek() {
+            skipWhitespace();
+            int c = peekChar();
+            if (c < 0) {
+                throw error("Unexpected end of input");
+            }
+            return (char) c;
+        }
+
+        private boolean consume(char c) {
+            skipWhitespace();
+            if (peekChar() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private boolean isAtEnd() {
+            skipWhitespace();
+            return peekChar() < 0;
+        }
+
+        private void expectEnd() {
+            if (!isAtEnd()) {
+                throw error("Unexpected trailing content");
+            }
+        }
+
+        private void skipWhitespace() {
+            int c;
+            while ((c = peekChar()) >= 0 && Character.isWhitespace((char) c)) {
+                position++;
+            }
+        }
+
+        // The next char without consuming it, -1 at the end of the input.
+        private int peekChar() {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        private char nextChar(String messageAtEnd) {
+            int c = peekChar();
+            if (c < 0) {
+                throw error(messageAtEnd);
+            }
+            position++;
+            return (char) c;
+        }
+
+        private boolean fill() {
+            if (reader == null) {
+                return false;
+            }
+            offset += limit;
+            position = 0;
+            limit = 0;
+            try {
+                int read;
+                do {
+                    read = reader.read(buffer);
+                } while (read == 0);
+                if (read < 0) {
+                    return false;
+                }
+                limit = read;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + (offset + position));
+        }
+    }
+}
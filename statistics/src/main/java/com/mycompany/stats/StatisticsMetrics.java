@@ -0,0 +1,77 @@
+package com.mycompany.stats;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms of the ingestion and statistics hot paths, published on the actuator metrics
+// endpoint (over HTTP and JMX). Only created when statistics.metrics.enabled is set, every hook is skipped otherwise.
+// Latencies are published in micros.
+final class StatisticsMetrics implements PublicMetrics {
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder busyStripes = new LongAdder();
+    private final LongAdder yields = new LongAdder();
+    private final LatencyHistogram ingestLatency = new LatencyHistogram();
+    private final LatencyHistogram statisticsLatency = new LatencyHistogram();
+
+    void transactionsAccepted(long count) {
+        accepted.add(count);
+    }
+
+    // Transactions older than the window or in the future.
+    void transactionsRejected(long count) {
+        rejected.add(count);
+    }
+
+    // Transactions refused with 429 because the pipeline is full.
+    void transactionThrottled() {
+        throttled.increment();
+    }
+
+    // A writer found the slot of its bucket busy in a stripe and moved on, see StatisticsBuckets.acquire.
+    void stripeBusy() {
+        busyStripes.increment();
+    }
+
+    // A writer found the slot of its bucket busy in every stripe and yielded before going through them again.
+    void stripesYielded() {
+        yields.increment();
+    }
+
+    void transactionIngested(long nanos) {
+        ingestLatency.record(nanos);
+    }
+
+    void statisticsComputed(long nanos) {
+        statisticsLatency.record(nanos);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("statistics.transactions.accepted", accepted.sum()));
+        metrics.add(new Metric<>("statistics.transactions.rejected", rejected.sum()));
+        metrics.add(new Metric<>("statistics.transactions.throttled", throttled.sum()));
+        metrics.add(new Metric<>("statistics.buckets.expired", StatisticsAggregator.getExpiredBuckets()));
+        metrics.add(new Metric<>("statistics.stripes.busy", busyStripes.sum()));
+        metrics.add(new Metric<>("statistics.stripes.yields", yields.sum()));
+        addLatency(metrics, "statistics.ingest.latency", ingestLatency);
+        addLatency(metrics, "statistics.compute.latency", statisticsLatency);
+        return metrics;
+    }
+
+    private static void addLatency(List<Metric<?>> metrics, String name, LatencyHistogram histogram) {
+        metrics.add(new Metric<>(name + ".count", histogram.getCount()));
+        metrics.add(new Metric<>(name + ".mean", histogram.getMeanNanos() / 1000));
+        metrics.add(new Metric<>(name + ".p50", histogram.getPercentileNanos(50) / 1000.0));
+        metrics.add(new Metric<>(name + ".p99", histogram.getPercentileNanos(99) / 1000.0));
+        metrics.add(new Metric<>(name + ".p999", histogram.getPercentileNanos(99.9) / 1000.0));
+        metrics.add(new Metric<>(name + ".max", histogram.getMaxNanos() / 1000.0));
+    }
+}
@@ -0,0 +1,15 @@
+package com.mycompany.stats;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "statistics.metrics.enabled", havingValue = "true")
+class StatisticsMetricsConfiguration {
+
+    @Bean
+    StatisticsMetrics statisticsMetrics() {
+        return new StatisticsMetrics();
+    }
+}
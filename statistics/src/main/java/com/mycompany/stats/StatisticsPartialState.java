@@ -0,0 +1,71 @@
+package com.mycompany.stats;
+
+import java.nio.ByteBuffer;
+
+// Binary format of the per bucket statistics of a node, for a coordinator to merge the statistics of several nodes:
+// the number of records (int) and the scale of the fixed point mode + 1 (int, 0 when off), followed by a 48 byte
+// record for every bucket of the window holding transactions : the start of the bucket in epoch milliseconds (long),
+// count (long), sum (double), sum in minor units (long), min and max (doubles), all in network byte order. Being
+// timestamped in milliseconds, the buckets of a node are merged into the ones of the coordinator even when both do not
+// have the same bucket width. The minor units are only merged between nodes of the same scale.
+final class StatisticsPartialState {
+    static final int HEADER_BYTES = 8;
+    static final int RECORD_BYTES = 48;
+
+    private StatisticsPartialState() {
+    }
+
+    // The given statistics are indexed like the cyclic buffer of the window, as returned by
+    // StatisticsAggregator.getStatistics.
+    static byte[] encode(Statistics[] statistics, StatisticsWindow window, FixedPointAmounts amounts,
+                         long currentTimestampInMillis) {
+        int records = 0;
+        for (Statistics bucketStatistics : statistics) {
+            records += bucketStatistics.isEmpty() ? 0 : 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + records * RECORD_BYTES);
+        buffer.putInt(records).putInt(FixedPointAmounts.scaleOf(amounts));
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        for (long tick = window.minTickOf(currentTick); tick <= currentTick; tick++) {
+            Statistics bucketStatistics = statistics[window.indexOf(tick)];
+            if (!bucketStatistics.isEmpty()) {
+                buffer.putLong(window.timestampOf(tick))
+                        .putLong(bucketStatistics.getCount())
+                        .putDouble(bucketStatistics.getSum())
+                        .putLong(bucketStatistics.getSumInUnits())
+                        .putDouble(bucketStatistics.getMin())
+                        .putDouble(bucketStatistics.getMax());
+            }
+        }
+        return buffer.array();
+    }
+
+    // Merges the records of the buckets which are part of the window ending at the given time into the statistics,
+    // aligned by bucket. Buckets the node considers part of its window, but the coordinator does not, are left out.
+    // A partial state of another scale, whose minor units would be read as those of the given one, is refused.
+    static void decode(ByteBuffer buffer, Statistics[] statistics, StatisticsWindow window, FixedPointAmounts amounts,
+                       long currentTimestampInMillis) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            throw new IllegalArgumentException("Truncated partial state");
+        }
+        int records = buffer.getInt();
+        if (buffer.getInt() != FixedPointAmounts.scaleOf(amounts)) {
+            throw new IllegalArgumentException("Partial state of another fixed point scale");
+        }
+        if (records < 0 || buffer.remaining() != (long) records * RECORD_BYTES) {
+            throw new IllegalArgumentException("Truncated partial state");
+        }
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        for (int i = 0; i < records; i++) {
+            long tick = window.tickOf(buffer.getLong());
+            long count = buffer.getLong();
+            double sum = buffer.getDouble();
+            long sumInUnits = buffer.getLong();
+            double min = buffer.getDouble();
+            double max = buffer.getDouble();
+            if (window.contains(tick, currentTick)) {
+                statistics[window.indexOf(tick)].addStatistics(count, sum, sumInUnits, min, max);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mycompany.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Optional warm restart: the stripes of the aggregator live in a file mapped in memory instead of an off-heap region,
+// so the buckets survive a restart and are taken over on startup, dropping the ones which fell out of the window in
+// between. Writes only go to the page cache, so they also survive the process crashing without any fsync on the hot
+// path. Flushing to disk, which only matters when the machine itself goes down, is done every flushIntervalMillis
+// (never when 0) and when stopping.
+final class StatisticsPersistence {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsPersistence.class);
+    // Header : magic, bucket width in milliseconds, buckets of the window, bytes per bucket, number of stripes and
+    // scale of the fixed point mode + 1 (0 when off), followed by the stripes. A file of another window, bucket layout
+    // or scale, whose minor units would be read as those of the current one, is started over.
+    private static final int MAGIC = 0x53544154;
+    private static final int HEADER_BYTES = 64;
+
+    private final Path file;
+    private final StatisticsWindow window;
+    private final FixedPointAmounts amounts;
+    private final long flushIntervalMillis;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private ScheduledExecutorService flusher;
+
+    StatisticsPersistence(Path file, StatisticsWindow window, FixedPointAmounts amounts, long flushIntervalMillis) {
+        this.file = file;
+        this.window = window;
+        this.amounts = amounts;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    void start() throws IOException {
+        start(System.currentTimeMillis());
+    }
+
+    void start(long currentTimestampInMillis) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int stripes = readStripes();
+        ByteBuffer previousStripes = null;
+        if (stripes > 0 && stripes != StatisticsAggregator.getStripes()) {
+            previousStripes = ByteBuffer.allocate(stripes * window.getStripeBytes());
+            readFully(previousStripes, HEADER_BYTES);
+        }
+        long bytes = HEADER_BYTES + StatisticsAggregator.getRegionBytes(window);
+        channel.truncate(bytes);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.position(HEADER_BYTES);
+        ByteBuffer region = buffer.slice();
+        if (stripes == StatisticsAggregator.getStripes()) {
+            StatisticsAggregator.attach(window, region, currentTimestampInMillis);
+            LOGGER.info("Restored the statistics from {}", file);
+        } else {
+            StatisticsAggregator.initialize(window, region, currentTimestampInMillis);
+            buffer.putInt(0, MAGIC)
+                    .putInt(4, (int) window.getBucketMillis())
+                    .putInt(8, window.getBuckets())
+                    .putInt(12, StatisticsBuckets.BYTES_PER_BUCKET)
+                    .putInt(16, StatisticsAggregator.getStripes())
+                    .putInt(20, FixedPointAmounts.scaleOf(amounts));
+            if (previousStripes != null) {
+                for (ByteBuffer previousStripe : StatisticsAggregator.slice(previousStripes, stripes, window)) {
+                    StatisticsAggregator.addBuckets(StatisticsBuckets.attach(previousStripe, window.getSize()),
+                            currentTimestampInMillis);
+                }
+                LOGGER.info("Restored the statistics from {} with {} stripes", file, stripes);
+            }
+        }
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "statistics-persistence");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(buffer::force, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void stop() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        buffer.force();
+        channel.close();
+    }
+
+    // Number of stripes stored in the file, 0 when it is new or has another layout.
+    private int readStripes() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+        readFully(header, 0);
+        if (header.hasRemaining() || header.getInt(0) != MAGIC
+                || header.getInt(4) != window.getBucketMillis()
+                || header.getInt(8) != window.getBuckets()
+                || header.getInt(12) != StatisticsBuckets.BYTES_PER_BUCKET
+                || header.getInt(20) != FixedPointAmounts.scaleOf(amounts)) {
+            return 0;
+        }
+        int stripes = header.getInt(16);
+        return stripes > 0 && channel.size() >= HEADER_BYTES + (long) stripes * window.getStripeBytes() ? stripes : 0;
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.mycompany.stats;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+// Warm restart is only enabled when a file is configured, e.g. statistics.persistence.file=/var/lib/statistics/buckets
+@Configuration
+@ConditionalOnProperty("statistics.persistence.file")
+class StatisticsPersistenceConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    StatisticsPersistence statisticsPersistence(StatisticsProperties properties) {
+        StatisticsProperties.Persistence persistence = properties.getPersistence();
+        return new StatisticsPersistence(Paths.get(persistence.getFile()), properties.getWindow().toStatisticsWindow(),
+                properties.getAmounts().toFixedPointAmounts(), persistence.getFlushIntervalMillis());
+    }
+}
@@ -0,0 +1,129 @@
+package com.mycompany.stats;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Data
+@ConfigurationProperties(prefix = "statistics")
+public class StatisticsProperties {
+    private final Window window = new Window();
+    private final Pipeline pipeline = new Pipeline();
+    private final Keyed keyed = new Keyed();
+    private final Stream stream = new Stream();
+    private final Persistence persistence = new Persistence();
+    private final Cluster cluster = new Cluster();
+    private final Admission admission = new Admission();
+    private final Amounts amounts = new Amounts();
+
+    @Data
+    public static class Window {
+        // Width of a bucket, which must divide a minute: the edge of the window moves by a bucket at a time.
+        private long bucketMillis = 1000;
+        // Length of the window in buckets. Every stripe takes about 2.6KB per bucket, rounded up to a power of two.
+        private int buckets = 60;
+
+        StatisticsWindow toStatisticsWindow() {
+            return new StatisticsWindow(bucketMillis, buckets);
+        }
+    }
+
+    @Data
+    public static class Pipeline {
+        // When enabled, POST /transactions only publishes into a ring buffer and answers 202, or 429 when it is full.
+        private boolean enabled;
+        private int capacity = 65536;
+        private int batchSize = 1024;
+        // SLEEPING parks the idle consumer, BUSY_SPIN and YIELDING keep a core busy for a lower latency.
+        private WaitStrategy waitStrategy = WaitStrategy.SLEEPING;
+    }
+
+    @Data
+    public static class Keyed {
+        // Bound of the memory of the keyed statistics: every key in use takes about 40 bytes per bucket of the window
+        // (2.5KB for the default 60 buckets, 24KB for 600 buckets of 100ms), a new key is not tracked once they are all
+        // in use.
+        private long maxBytes = 256L * 1024 * 1024;
+        // 0 tracks as many keys as max-bytes allows, a larger cap than that is refused at startup.
+        private int maxKeys;
+
+        int toMaxKeys(int buckets) {
+            long bytesPerKey = KeyedStatisticsAggregator.bytesPerKey(buckets);
+            if (maxKeys == 0) {
+                return (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / bytesPerKey));
+            }
+            if (maxKeys * bytesPerKey > maxBytes) {
+                throw new IllegalArgumentException("statistics.keyed.max-keys=" + maxKeys + " would take up to "
+                        + maxKeys * bytesPerKey + " bytes with " + buckets + " buckets, over max-bytes=" + maxBytes);
+            }
+            return maxKeys;
+        }
+    }
+
+    @Data
+    public static class Stream {
+        // A subscriber missing this many events in a row is dropped.
+        private int maxConflated = 5;
+        // Threads writing the events to the subscribers.
+        private int senders = 4;
+    }
+
+    @Data
+    public static class Persistence {
+        // When set, the buckets are kept in this memory mapped file and restored on startup.
+        private String file;
+        // How often the file is forced to disk, never when 0. It is always forced when stopping.
+        private long flushIntervalMillis = 1000;
+    }
+
+    @Data
+    public static class Cluster {
+        // Base URLs of the other nodes, e.g. http://localhost:8081,http://localhost:8082. When set, GET /statistics
+        // returns the statistics of the whole cluster.
+        private List<String> peers = new ArrayList<>();
+        private int timeoutMillis = 500;
+    }
+
+    @Data
+    public static class Admission {
+        // When enabled, writes (POST /transactions) and reads (GET /statistics) each get a limit of requests in flight
+        // adapting to their latency. Writes over it are refused with 429 and reads with 503.
+        private boolean enabled;
+        private final Limit writes = new Limit(10);
+        private final Limit reads = new Limit(5);
+        private int retryAfterSecs = 1;
+    }
+
+    @Data
+    public static class Amounts {
+        // Number of decimals of the fixed point mode, e.g. 2 to add up the amounts exactly in cents. The amounts are
+        // only added up in floating point when not set.
+        private Integer scale;
+
+        FixedPointAmounts toFixedPointAmounts() {
+            return scale != null ? new FixedPointAmounts(scale) : null;
+        }
+    }
+
+    @Data
+    public static class Limit {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        // A request slower than this shrinks the limit, a faster one grows it.
+        private long targetLatencyMillis;
+        private double backoffRatio = 0.9;
+
+        Limit(long targetLatencyMillis) {
+            this.targetLatencyMillis = targetLatencyMillis;
+        }
+
+        AdaptiveConcurrencyLimit toAdaptiveConcurrencyLimit() {
+            return new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit,
+                    TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis), backoffRatio);
+        }
+    }
+}
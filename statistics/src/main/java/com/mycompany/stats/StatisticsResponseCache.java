@@ -0,0 +1,92 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The statistics of the window only change when the current bucket (tick) or the version of the aggregator does, so
+// the JSON of the statistics is only computed and serialized once for every tick and version, and served as is until
+// then. The ETag of the response is made of both.
+// Requests racing on a new tick or version each compute a response, but only the newest one is cached, and the first
+// one cached for a tick and version is the one every request for them gets: an ETag never stands for two bodies, and a
+// slow request never puts back an older response.
+final class StatisticsResponseCache {
+    private final StripedStatisticsAggregator aggregator;
+    private final Serializer serializer;
+    private final AtomicReference<Cached> cached = new AtomicReference<>(
+            new Cached(null, new Response(Long.MIN_VALUE, Long.MIN_VALUE, null, null)));
+
+    StatisticsResponseCache(ObjectMapper objectMapper) {
+        this(objectMapper::writeValueAsBytes);
+    }
+
+    StatisticsResponseCache(Serializer serializer) {
+        this(StatisticsAggregator.getDefault(), serializer);
+    }
+
+    StatisticsResponseCache(StripedStatisticsAggregator aggregator, Serializer serializer) {
+        this.aggregator = aggregator;
+        this.serializer = serializer;
+    }
+
+    Response get(long currentTimestampInMillis) throws IOException {
+        StatisticsWindow window = aggregator.getWindow();
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        long version = aggregator.getVersion();
+        Cached cached = this.cached.get();
+        if (cached.isFor(window, currentTick, version)) {
+            return cached.response;
+        }
+        Statistics statistics = aggregator.getAggregatedStatistics(currentTimestampInMillis);
+        byte[] body = serializer.serialize(statistics);
+        Cached computed = new Cached(window, new Response(currentTick, version, body,
+                "\"" + currentTick + "-" + version + "\""));
+        while (true) {
+            cached = this.cached.get();
+            if (cached.isFor(window, currentTick, version)) {
+                return cached.response;
+            }
+            if (!computed.isNewerThan(cached)) {
+                return computed.response;
+            }
+            if (this.cached.compareAndSet(cached, computed)) {
+                return computed.response;
+            }
+        }
+    }
+
+    // Ticks of another window are not comparable, a response of the current window is always newer.
+    @AllArgsConstructor
+    private static final class Cached {
+        private final StatisticsWindow window;
+        private final Response response;
+
+        private boolean isFor(StatisticsWindow window, long tick, long version) {
+            return window.equals(this.window) && response.getTick() == tick && response.getVersion() == version;
+        }
+
+        private boolean isNewerThan(Cached cached) {
+            if (!window.equals(cached.window)) {
+                return true;
+            }
+            return response.getTick() > cached.response.getTick() || (response.getTick() == cached.response.getTick()
+                    && response.getVersion() > cached.response.getVersion());
+        }
+    }
+
+    interface Serializer {
+        byte[] serialize(Statistics statistics) throws IOException;
+    }
+
+    @AllArgsConstructor
+    @Value
+    static class Response {
+        private long tick;
+        private long version;
+        private byte[] body;
+        private String eTag;
+    }
+}
@@ -0,0 +1,119 @@
+package com.mycompany.stats;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Long term history of the statistics, beyond the window: every bucket leaving the window of a stripe is folded into
+// the bucket of its minute and the bucket of its hour. Both tiers are cyclic StatisticsBuckets kept off-heap, so they
+// take a fixed amount of memory and a bucket is overwritten once its retention has passed. A range query only reads
+// the buckets of the tier matching its step, never the raw transactions.
+// Buckets are written and read without locks, like the ones of a stripe (see StatisticsBuckets). A stripe handing
+// over a bucket only ever waits for another one taking over the same slot for a newer minute or hour, which happens
+// once per minute or hour, or for a range query holding the slot back after writers spoilt a few of its reads.
+final class StatisticsRollups {
+    static final int MINUTES = 24 * 60;
+    static final int HOURS = 30 * 24;
+    // Bounds the size of a range response.
+    static final int MAX_POINTS = 10000;
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+    private static final long HOUR_IN_MILLIS = 60 * MINUTE_IN_MILLIS;
+
+    private final Tier minutes = new Tier(60, MINUTES);
+    private final Tier hours = new Tier(60 * 60, HOURS);
+
+    // Called by a stripe while expiring the given bucket, starting at the given timestamp, from its window.
+    void addBucket(StatisticsBuckets source, int sourceIndex, long timestampInMillis) {
+        minutes.addBucket(source, sourceIndex, timestampInMillis / 1000);
+        hours.addBucket(source, sourceIndex, timestampInMillis / 1000);
+    }
+
+    // One point per step from `from` (rounded down to the step) to `to`, out of the hour buckets when the step is a
+    // whole number of hours and out of the minute buckets otherwise. Buckets still inside the window are not part of
+    // any point yet, neither are the ones older than the retention of the tier. Only the buckets the tier can still
+    // hold at the current time are read, so a point never costs more than the retention of its tier whatever its step.
+    List<TimestampedStatistics> getRange(long fromInMillis, long toInMillis, long stepInMillis, double[] percentiles,
+                                         long currentTimestampInMillis) {
+        if (stepInMillis <= 0 || stepInMillis % MINUTE_IN_MILLIS != 0) {
+            throw new IllegalArgumentException("The step must be a whole number of minutes: " + stepInMillis);
+        }
+        if (fromInMillis < 0 || fromInMillis >= toInMillis) {
+            throw new IllegalArgumentException("Invalid range: " + fromInMillis + " to " + toInMillis);
+        }
+        long startInMillis = fromInMillis - fromInMillis % stepInMillis;
+        long lastPoint = (toInMillis - startInMillis - 1) / stepInMillis;
+        if (lastPoint >= MAX_POINTS) {
+            throw new IllegalArgumentException("More than " + MAX_POINTS + " points requested");
+        }
+        Tier tier = stepInMillis % HOUR_IN_MILLIS == 0 ? hours : minutes;
+        long newestInSecs = tier.start(currentTimestampInMillis / 1000);
+        long oldestInSecs = newestInSecs - (long) (tier.buckets.size() - 1) * tier.secondsPerBucket;
+        List<TimestampedStatistics> points = new ArrayList<>();
+        StatisticsBuckets.Snapshot snapshot = new StatisticsBuckets.Snapshot(percentiles != null);
+        for (int point = 0; point <= lastPoint; point++) {
+            long pointInMillis = startInMillis + point * stepInMillis;
+            Statistics statistics = new Statistics();
+            long[] sketch = percentiles != null ? new long[PercentileSketch.BINS] : null;
+            long endInSecs = Math.min(pointInMillis / 1000 + stepInMillis / 1000, newestInSecs + tier.secondsPerBucket);
+            for (long second = Math.max(pointInMillis / 1000, oldestInSecs); second < endInSecs;
+                 second += tier.secondsPerBucket) {
+                tier.addTo(statistics, sketch, second, snapshot);
+            }
+            if (sketch != null) {
+                statistics.setPercentiles(PercentileSketch.percentiles(sketch, statistics, percentiles));
+            }
+            points.add(new TimestampedStatistics(pointInMillis, statistics));
+        }
+        return points;
+    }
+
+    private static final class Tier {
+        private final int secondsPerBucket;
+        private final StatisticsBuckets buckets;
+
+        private Tier(int secondsPerBucket, int size) {
+            this.secondsPerBucket = secondsPerBucket;
+            this.buckets = new StatisticsBuckets(ByteBuffer.allocateDirect(size * StatisticsBuckets.BYTES_PER_BUCKET),
+                    size);
+        }
+
+        private void addBucket(StatisticsBuckets source, int sourceIndex, long timestampInSecs) {
+            long startInSecs = start(timestampInSecs);
+            int index = (int) (startInSecs / secondsPerBucket % buckets.size());
+            while (true) {
+                int acquired = buckets.acquire(index, startInSecs);
+                if (acquired == StatisticsBuckets.ACQUIRED) {
+                    break;
+                }
+                if (acquired == StatisticsBuckets.EXPIRED) {
+                    buckets.reset(index, startInSecs);
+                    break;
+                }
+                if (acquired == StatisticsBuckets.STALE) {
+                    // The slot already moved on to a bucket of a later minute or hour: this one is past its retention.
+                    return;
+                }
+                Thread.yield();
+            }
+            buckets.addBucket(index, source, sourceIndex);
+            buckets.release(index);
+        }
+
+        private void addTo(Statistics statistics, long[] sketch, long timestampInSecs,
+                           StatisticsBuckets.Snapshot snapshot) {
+            long startInSecs = start(timestampInSecs);
+            buckets.read((int) (startInSecs / secondsPerBucket % buckets.size()), snapshot);
+            if (snapshot.getTimestamp() != startInSecs || snapshot.getCount() == 0) {
+                return;
+            }
+            snapshot.addTo(statistics);
+            if (sketch != null) {
+                snapshot.addSketchTo(sketch);
+            }
+        }
+
+        private long start(long timestampInSecs) {
+            return timestampInSecs - timestampInSecs % secondsPerBucket;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mycompany.stats;
+
+import java.util.Arrays;
+
+// Count, sum, min and max of every power of two aligned range of the buckets of a stripe, as an implicit binary tree:
+// node 1 is the root, the children of node i are 2i and 2i + 1, and the leaves start at LEAVES. Setting a bucket
+// recombines its ancestors, the root holds the totals of all buckets and the totals of any contiguous range of
+// buckets are made of at most 2 log(LEAVES) nodes: all logarithmic, nothing scans the buckets. The sums in minor units
+// of the fixed point mode (see FixedPointAmounts) are kept the same way.
+final class StatisticsSegmentTree {
+    private final int leaves;
+    private final long[] counts;
+    private final double[] sums;
+    private final long[] sumsInUnits;
+    private final double[] mins;
+    private final double[] maxs;
+
+    StatisticsSegmentTree(int size) {
+        leaves = Integer.highestOneBit(size * 2 - 1);
+        counts = new long[leaves * 2];
+        sums = new double[leaves * 2];
+        sumsInUnits = new long[leaves * 2];
+        mins = new double[leaves * 2];
+        maxs = new double[leaves * 2];
+        clear();
+    }
+
+    // Replaces the totals of a bucket and recombines its ancestors.
+    void set(int index, long count, double sum, long sumInUnits, double min, double max) {
+        int node = index + leaves;
+        counts[node] = count;
+        sums[node] = sum;
+        sumsInUnits[node] = sumInUnits;
+        mins[node] = min;
+        maxs[node] = max;
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            int left = node * 2;
+            int right = left + 1;
+            counts[node] = counts[left] + counts[right];
+            sums[node] = sums[left] + sums[right];
+            sumsInUnits[node] = sumsInUnits[left] + sumsInUnits[right];
+            mins[node] = Math.min(mins[left], mins[right]);
+            maxs[node] = Math.max(maxs[left], maxs[right]);
+        }
+    }
+
+    void clear(int index) {
+        set(index, 0, 0.0, 0, Double.MAX_VALUE, -Double.MAX_VALUE);
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(sumsInUnits, 0);
+        Arrays.fill(mins, Double.MAX_VALUE);
+        Arrays.fill(maxs, -Double.MAX_VALUE);
+    }
+
+    // Adds the totals of all buckets, out of the root.
+    void addTo(Statistics statistics) {
+        statistics.addStatistics(counts[1], sums[1], sumsInUnits[1], mins[1], maxs[1]);
+    }
+
+    // Adds the totals of the buckets from index `from` (inclusive) to `to` (exclusive).
+    void addTo(Statistics statistics, int from, int to) {
+        long count = 0;
+        double sum = 0.0;
+        long sumInUnits = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int left = from + leaves, right = to + leaves; left < right; left >>>= 1, right >>>= 1) {
+            if ((left & 1) == 1) {
+                count += counts[left];
+                sum += sums[left];
+                sumInUnits += sumsInUnits[left];
+                min = Math.min(min, mins[left]);
+                max = Math.max(max, maxs[left]);
+                left++;
+            }
+            if ((right & 1) == 1) {
+                right--;
+                count += counts[right];
+                sum += sums[right];
+                sumInUnits += sumsInUnits[right];
+                min = Math.min(min, mins[right]);
+                max = Math.max(max, maxs[right]);
+            }
+        }
+        statistics.addStatistics(count, sum, sumInUnits, min, max);
+    }
+}
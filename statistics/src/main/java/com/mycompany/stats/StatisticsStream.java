@@ -0,0 +1,182 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Server-Sent Events of the statistics: a single thread computes the statistics once per second, right after the
+// second boundary, and serializes them once into an event shared by every subscriber. Each subscriber only holds the
+// latest event it has not been sent yet, so a slow one misses (conflates) events instead of buffering them, and it is
+// dropped once it fell behind maxConflated events in a row.
+final class StatisticsStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsStream.class);
+    static final MediaType EVENT_STREAM = new MediaType("text", "event-stream", StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+    private final int maxConflated;
+    private final int senders;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService ticker;
+    private ExecutorService sender;
+    private volatile byte[] latestEvent;
+
+    StatisticsStream(ObjectMapper objectMapper, int maxConflated, int senders) {
+        this.objectMapper = objectMapper;
+        this.maxConflated = maxConflated;
+        this.senders = senders;
+    }
+
+    void start() {
+        AtomicInteger threads = new AtomicInteger();
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "statistics-stream"));
+        sender = Executors.newFixedThreadPool(senders,
+                runnable -> daemon(runnable, "statistics-stream-sender-" + threads.incrementAndGet()));
+        scheduleTick();
+    }
+
+    void stop() {
+        ticker.shutdownNow();
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    // The stream stays open until the client goes away, it gets the latest statistics straight away.
+    ResponseBodyEmitter subscribe() {
+        ResponseBodyEmitter emitter = new EventStreamEmitter();
+        subscribe(emitter);
+        return emitter;
+    }
+
+    void subscribe(ResponseBodyEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        byte[] event = latestEvent;
+        if (event != null) {
+            subscriber.offer(event);
+        }
+    }
+
+    int getSubscribers() {
+        return subscribers.size();
+    }
+
+    void publish(Statistics statistics) throws IOException {
+        ByteArrayOutputStream event = new ByteArrayOutputStream(256);
+        event.write("data:".getBytes(StandardCharsets.UTF_8));
+        objectMapper.writeValue(event, statistics);
+        event.write("\n\n".getBytes(StandardCharsets.UTF_8));
+        latestEvent = event.toByteArray();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(latestEvent);
+        }
+    }
+
+    private void scheduleTick() {
+        ticker.schedule(this::tick, 1000 - System.currentTimeMillis() % 1000, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        try {
+            if (!subscribers.isEmpty()) {
+                publish(StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis()));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to publish the statistics", e);
+        } finally {
+            scheduleTick();
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private final class Subscriber {
+        private final ResponseBodyEmitter emitter;
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicInteger conflated = new AtomicInteger();
+
+        Subscriber(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(byte[] event) {
+            if (pending.getAndSet(event) != null && conflated.incrementAndGet() >= maxConflated) {
+                drop(null);
+                return;
+            }
+            if (sending.compareAndSet(false, true)) {
+                sender.execute(this::send);
+            }
+        }
+
+        // Sends the pending event until there is none left, only one sender runs at a time for a subscriber.
+        private void send() {
+            while (true) {
+                byte[] event = pending.getAndSet(null);
+                if (event == null) {
+                    sending.set(false);
+                    if (pending.get() == null || !sending.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!subscribers.contains(this)) {
+                    return;
+                }
+                try {
+                    emitter.send(event, EVENT_STREAM);
+                    conflated.set(0);
+                } catch (IOException | RuntimeException e) {
+                    drop(e);
+                    return;
+                }
+            }
+        }
+
+        private void drop(Exception e) {
+            if (subscribers.remove(this)) {
+                if (e == null) {
+                    emitter.complete();
+                } else {
+                    emitter.completeWithError(e);
+                }
+            }
+        }
+    }
+
+    // Raw server-sent events, the events are already serialized by the stream.
+    private static final class EventStreamEmitter extends ResponseBodyEmitter {
+        EventStreamEmitter() {
+            super(0L);
+        }
+
+        @Override
+        protected void extendResponse(ServerHttpResponse outputMessage) {
+            super.extendResponse(outputMessage);
+            outputMessage.getHeaders().setContentType(EVENT_STREAM);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+class StatisticsStreamConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    StatisticsStream statisticsStream(ObjectMapper objectMapper, StatisticsProperties properties) {
+        StatisticsProperties.Stream stream = properties.getStream();
+        return new StatisticsStream(objectMapper, stream.getMaxConflated(), stream.getSenders());
+    }
+}
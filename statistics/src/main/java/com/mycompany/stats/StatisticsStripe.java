@@ -0,0 +1,307 @@
+package com.mycompany.stats;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// One partition of the window (see StatisticsWindow). A stripe owns its own cyclic buffer of buckets, written without
+// locks (see StatisticsBuckets): a writer registers itself in the slot of its bucket, adds to it and leaves, and a
+// slot holding an expired bucket is handed over to the rollups by the writer taking it over for a newer one. Readers
+// serialize on the monitor of the stripe and keep the totals of the window in a segment tree over the buckets,
+// refreshing a leaf out of a consistent copy of its slot whenever a writer has marked the slot dirty since the last
+// read: the root answers the whole window and a range of leaves the sub-windows. A read therefore costs a word of the
+// dirty bitmap per 64 slots, plus a copy and a logarithmic update per slot written or expired since the last read.
+// Timestamps are ticks of the window, i.e. numbers of buckets.
+final class StatisticsStripe {
+    // Outcomes of a write.
+    static final int ADDED = 0;
+    static final int REJECTED = 1;
+    static final int BUSY = 2;
+
+    private static final AtomicLongFieldUpdater<StatisticsStripe> VERSION =
+            AtomicLongFieldUpdater.newUpdater(StatisticsStripe.class, "version");
+    private static final AtomicLongFieldUpdater<StatisticsStripe> MIN_TICK =
+            AtomicLongFieldUpdater.newUpdater(StatisticsStripe.class, "minTick");
+    private static final AtomicLongFieldUpdater<StatisticsStripe> EXPIRED_BUCKETS =
+            AtomicLongFieldUpdater.newUpdater(StatisticsStripe.class, "expiredBuckets");
+
+    private final StatisticsWindow window;
+    private final StatisticsBuckets buckets;
+    // Every bucket leaving the window is folded into the rollups.
+    private final StatisticsRollups rollups;
+    // One bit per slot, set by every writer on its way out and cleared by the reader about to copy the slot.
+    private final AtomicLongArray dirty;
+    // Only used by readers, under the monitor: the totals of the buckets inside the window as of the last read, and
+    // the timestamp every slot was copied at.
+    private final StatisticsSegmentTree tree;
+    private final long[] readTicks;
+    private final StatisticsBuckets.Snapshot snapshot = new StatisticsBuckets.Snapshot(false);
+    private final StatisticsBuckets.Snapshot sketchSnapshot = new StatisticsBuckets.Snapshot(true);
+    private long readMinTick;
+    // Only moves forward, by whoever sees a later clock first.
+    private volatile long minTick;
+    // Number of buckets expired from the window, only for metrics.
+    private volatile long expiredBuckets;
+    // Bumped after every write, once the write is complete.
+    private volatile long version;
+
+    // The window starts at the given tick.
+    StatisticsStripe(ByteBuffer buffer, StatisticsWindow window, StatisticsRollups rollups, long version,
+                     long currentTick) {
+        this(new StatisticsBuckets(buffer, window.getSize()), window, rollups, version, currentTick);
+    }
+
+    private StatisticsStripe(StatisticsBuckets buckets, StatisticsWindow window, StatisticsRollups rollups,
+                             long version, long currentTick) {
+        this.buckets = buckets;
+        this.window = window;
+        this.rollups = rollups;
+        this.tree = new StatisticsSegmentTree(window.getSize());
+        this.readTicks = new long[window.getSize()];
+        Arrays.fill(readTicks, Long.MIN_VALUE);
+        this.dirty = new AtomicLongArray((window.getSize() + 63) / 64);
+        for (int word = 0; word < dirty.length(); word++) {
+            int slots = window.getSize() - word * 64;
+            dirty.set(word, slots >= 64 ? -1L : (1L << slots) - 1);
+        }
+        this.version = version;
+        this.minTick = window.minTickOf(currentTick);
+        this.readMinTick = minTick;
+    }
+
+    // Takes over the buckets written by a previous run: the totals are rebuilt by the first read from the buckets
+    // inside the window, older ones are left to expire and the ones ahead of the clock (or in the wrong slot) are
+    // cleared.
+    static StatisticsStripe attach(ByteBuffer buffer, StatisticsWindow window, StatisticsRollups rollups, long version,
+                                   long currentTick) {
+        StatisticsStripe stripe = new StatisticsStripe(StatisticsBuckets.attach(buffer, window.getSize()), window,
+                rollups, version, currentTick);
+        for (int index = 0; index < window.getSize(); index++) {
+            stripe.buckets.recover(index);
+            long tick = stripe.buckets.getTimestamp(index);
+            if (tick > currentTick || (tick >= 0 && window.indexOf(tick) != index)) {
+                stripe.buckets.clear(index);
+            }
+        }
+        return stripe;
+    }
+
+    // The units are 0 when not in fixed point mode. Nothing is added when BUSY, see StatisticsBuckets.acquire.
+    int addAmount(long tick, double amount, long units, long currentTick) {
+        int acquired = acquireBucket(tick, currentTick);
+        if (acquired == ADDED) {
+            int index = window.indexOf(tick);
+            buckets.addAmount(index, amount, units, PercentileSketch.binOf(amount));
+            releaseBucket(index);
+        }
+        return acquired;
+    }
+
+    // The source slot must not be written meanwhile.
+    int addBucket(StatisticsBuckets source, int sourceIndex, long currentTick) {
+        long tick = source.getTimestamp(sourceIndex);
+        int acquired = acquireBucket(tick, currentTick);
+        if (acquired == ADDED) {
+            int index = window.indexOf(tick);
+            buckets.addBucket(index, source, sourceIndex);
+            releaseBucket(index);
+        }
+        return acquired;
+    }
+
+    int addBucket(TransactionBatch batch, int entry, long currentTick) {
+        long tick = batch.getTick(entry);
+        int acquired = acquireBucket(tick, currentTick);
+        if (acquired == ADDED) {
+            int index = window.indexOf(tick);
+            buckets.addBucket(index, batch.getCount(entry), batch.getSum(entry), batch.getSumInUnits(entry),
+                    batch.getMin(entry), batch.getMax(entry), batch.getSketch(entry));
+            releaseBucket(index);
+        }
+        return acquired;
+    }
+
+    // Adds the totals of this stripe's window to the given statistics without allocating. Every bucket is a
+    // consistent snapshot of its slot.
+    synchronized void addTo(Statistics statistics, long currentTick) {
+        read(currentTick, null, 0, 0);
+        tree.addTo(statistics);
+    }
+
+    // Same as above, also merging the percentile sketches of this stripe's window into the given bins. The totals
+    // and the sketch of every bucket come from the same snapshot of its slot.
+    synchronized void addTo(Statistics statistics, long[] sketch, long currentTick) {
+        read(currentTick, sketch, Long.MIN_VALUE, Long.MAX_VALUE);
+        tree.addTo(statistics);
+    }
+
+    // Adds the totals of the last given number of buckets only, out of the segment tree. The sub-window is contiguous
+    // in the cyclic buffer unless it wraps around, in which case it is made of its two ends. The percentile sketch,
+    // when given, is merged from the buckets of the sub-window.
+    synchronized void addTo(Statistics statistics, long[] sketch, long currentTick, int windowBuckets) {
+        long fromTick = currentTick - (windowBuckets - 1);
+        int from = window.indexOf(fromTick);
+        int to = window.indexOf(currentTick) + 1;
+        read(currentTick, sketch, fromTick, currentTick);
+        if (from < to) {
+            tree.addTo(statistics, from, to);
+        } else {
+            tree.addTo(statistics, from, window.getSize());
+            tree.addTo(statistics, 0, to);
+        }
+    }
+
+    StatisticsWindow getWindow() {
+        return window;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    long getExpiredBuckets() {
+        return expiredBuckets;
+    }
+
+    // Adds every bucket still inside the window to the given statistics, at the index of its tick modulo the number
+    // of buckets of the window.
+    synchronized void addBucketsTo(Statistics[] statistics) {
+        long minTick = this.minTick;
+        for (int index = 0; index < window.getSize(); index++) {
+            buckets.read(index, snapshot);
+            if (snapshot.getTimestamp() >= minTick && snapshot.getCount() > 0) {
+                snapshot.addTo(statistics[(int) (snapshot.getTimestamp() % window.getBuckets())]);
+            }
+        }
+    }
+
+    // Adds the bucket of the given tick, if this stripe holds it.
+    synchronized void addBucketTo(Statistics statistics, long tick) {
+        buckets.read(window.indexOf(tick), snapshot);
+        if (snapshot.getTimestamp() == tick && snapshot.getCount() > 0) {
+            snapshot.addTo(statistics);
+        }
+    }
+
+    // Hands every bucket which left the window over to the rollups, including the ones still being written at the
+    // previous reads or left behind by late writers.
+    synchronized void expire(long currentTick) {
+        long minTick = advance(currentTick);
+        for (int index = 0; index < window.getSize(); index++) {
+            if (buckets.tryExpire(index, minTick)) {
+                handOver(index);
+                buckets.clear(index);
+            }
+        }
+    }
+
+    // Registers the caller as the writer of the bucket of the given tick, returns ADDED once it is, REJECTED if the
+    // tick is not part of the window, or BUSY. The slot is first handed over to the rollups when it holds an older
+    // bucket.
+    private int acquireBucket(long tick, long currentTick) {
+        long minTick = advance(currentTick);
+        if (tick < minTick || tick >= minTick + window.getBuckets()) {
+            return REJECTED;
+        }
+        int index = window.indexOf(tick);
+        switch (buckets.acquire(index, tick)) {
+            case StatisticsBuckets.ACQUIRED:
+                return ADDED;
+            case StatisticsBuckets.EXPIRED:
+                handOver(index);
+                buckets.reset(index, tick);
+                return ADDED;
+            case StatisticsBuckets.BUSY:
+                return BUSY;
+            default:
+                return REJECTED;
+        }
+    }
+
+    // The slot is marked dirty before the version is bumped, so a reader seeing the new version sees the mark.
+    private void releaseBucket(int index) {
+        buckets.release(index);
+        long bit = 1L << index;
+        long bits = dirty.get(index >>> 6);
+        while ((bits & bit) == 0 && !dirty.compareAndSet(index >>> 6, bits, bits | bit)) {
+            bits = dirty.get(index >>> 6);
+        }
+        VERSION.incrementAndGet(this);
+    }
+
+    // Must be called by the owner of the slot, see StatisticsBuckets.acquire.
+    private void handOver(int index) {
+        if (buckets.getCount(index) > 0) {
+            rollups.addBucket(buckets, index, window.timestampOf(buckets.getTimestamp(index)));
+        }
+    }
+
+    // Moves the window on to the given tick, returns its oldest tick.
+    private long advance(long currentTick) {
+        long currentMinTick = window.minTickOf(currentTick);
+        long minTick = this.minTick;
+        while (currentMinTick > minTick) {
+            if (MIN_TICK.compareAndSet(this, minTick, currentMinTick)) {
+                EXPIRED_BUCKETS.addAndGet(this, Math.min(window.getBuckets(), currentMinTick - minTick));
+                return currentMinTick;
+            }
+            minTick = this.minTick;
+        }
+        return minTick;
+    }
+
+    // Must be called under the monitor. Brings the segment tree up to date with the slots of the window, and merges
+    // the sketches of its buckets from `fromTick` to `toTick` into the given bins when not null. The buckets which
+    // left the window since the last read are handed over to the rollups, unless they are still being written: the
+    // next writer taking over their slot does it then, or the next range query (see expire). The slots entering the
+    // window are copied whether dirty or not, since they may have been written ahead of the window of the last read.
+    private void read(long currentTick, long[] sketch, long fromTick, long toTick) {
+        long minTick = advance(currentTick);
+        if (minTick > readMinTick) {
+            for (long tick = readMinTick; tick < Math.min(minTick, readMinTick + window.getSize()); tick++) {
+                int index = window.indexOf(tick);
+                if (readTicks[index] < minTick) {
+                    tree.clear(index);
+                }
+                if (buckets.tryExpire(index, minTick)) {
+                    handOver(index);
+                    buckets.clear(index);
+                }
+            }
+            long enteringTick = Math.max(readMinTick, minTick - window.getBuckets()) + window.getBuckets();
+            for (long tick = enteringTick; sketch == null && tick < minTick + window.getBuckets(); tick++) {
+                refresh(window.indexOf(tick), snapshot, minTick);
+            }
+            readMinTick = minTick;
+        }
+        for (int word = 0; sketch == null && word < dirty.length(); word++) {
+            if (dirty.get(word) != 0) {
+                for (long bits = dirty.getAndSet(word, 0); bits != 0; bits &= bits - 1) {
+                    refresh(word * 64 + Long.numberOfTrailingZeros(bits), snapshot, minTick);
+                }
+            }
+        }
+        for (long tick = minTick; sketch != null && tick < minTick + window.getBuckets(); tick++) {
+            int index = window.indexOf(tick);
+            refresh(index, sketchSnapshot, minTick);
+            if (sketchSnapshot.getTimestamp() == tick && tick >= fromTick && tick <= toTick) {
+                sketchSnapshot.addSketchTo(sketch);
+            }
+        }
+    }
+
+    private void refresh(int index, StatisticsBuckets.Snapshot snapshot, long minTick) {
+        buckets.read(index, snapshot);
+        update(index, snapshot, minTick);
+    }
+
+    private void update(int index, StatisticsBuckets.Snapshot snapshot, long minTick) {
+        readTicks[index] = snapshot.getTimestamp();
+        if (snapshot.getTimestamp() >= minTick && snapshot.getTimestamp() < minTick + window.getBuckets()) {
+            snapshot.copyTo(tree, index);
+        } else {
+            tree.clear(index);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.mycompany.stats;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+// Layout of the sliding window: the last `buckets` buckets of `bucketMillis` each, the current one included. A
+// timestamp belongs to the bucket of its tick (timestamp / bucketMillis), so the edge of the window moves by a bucket
+// at a time. The cyclic buffer of a stripe is sized to the next power of two, the index of a tick being its low bits:
+// the slots beyond `buckets` are only ever holding expired ticks. Memory grows linearly with the size of the buffer
+// (getStripeBytes() per stripe), and so does the rotation of a stripe left idle for longer than the window, while a
+// read stays constant (the whole window) or logarithmic (a part of it) in the number of buckets.
+@EqualsAndHashCode
+@ToString
+final class StatisticsWindow {
+    static final StatisticsWindow DEFAULT = new StatisticsWindow(1000, 60);
+    private static final int MAX_SIZE = 1 << 16;
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final int size;
+    private final int mask;
+
+    // Buckets never straddle two minutes, so that the rollups of a bucket go to a single minute (see
+    // StatisticsRollups).
+    StatisticsWindow(long bucketMillis, int buckets) {
+        if (bucketMillis <= 0 || MINUTE_IN_MILLIS % bucketMillis != 0) {
+            throw new IllegalArgumentException("The bucket width must divide a minute: " + bucketMillis);
+        }
+        if (buckets <= 0 || buckets > MAX_SIZE) {
+            throw new IllegalArgumentException("The number of buckets must be between 1 and " + MAX_SIZE);
+        }
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        this.size = buckets == 1 ? 1 : Integer.highestOneBit(buckets * 2 - 1);
+        this.mask = size - 1;
+    }
+
+    long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    int getBuckets() {
+        return buckets;
+    }
+
+    // Number of slots of the cyclic buffer, the next power of two from the number of buckets.
+    int getSize() {
+        return size;
+    }
+
+    long getLengthInMillis() {
+        return bucketMillis * buckets;
+    }
+
+    int getStripeBytes() {
+        return size * StatisticsBuckets.BYTES_PER_BUCKET;
+    }
+
+    long tickOf(long timestampInMillis) {
+        return Math.floorDiv(timestampInMillis, bucketMillis);
+    }
+
+    long timestampOf(long tick) {
+        return tick * bucketMillis;
+    }
+
+    int indexOf(long tick) {
+        return (int) tick & mask;
+    }
+
+    // The oldest tick of the window ending at the given tick.
+    long minTickOf(long currentTick) {
+        return currentTick - (buckets - 1);
+    }
+
+    boolean contains(long tick, long currentTick) {
+        return tick >= minTickOf(currentTick) && tick <= currentTick;
+    }
+
+    // The length in milliseconds of a requested window e.g. ?window=10s: a number of milliseconds followed by "ms", or
+    // of seconds optionally followed by "s".
+    static long parseLength(String window) {
+        if (window.endsWith("ms")) {
+            return Long.parseLong(window.substring(0, window.length() - 2));
+        }
+        return Long.parseLong(window.endsWith("s") ? window.substring(0, window.length() - 1) : window) * 1000;
+    }
+}
@@ -0,0 +1,328 @@
+package com.mycompany.stats;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// The statistics of the window of an aggregator of its own: no state is shared between instances, so several of them
+// can serve separate endpoints (or tests) side by side. StatisticsAggregator is the one of the JVM, served by every
+// mode unless given another one.
+final class StripedStatisticsAggregator {
+    // Statistics are striped like a LongAdder: every stripe holds a cyclic buffer of the buckets of the window (60
+    // seconds by default, see StatisticsWindow), written without locks. A writer adds to the slot of its bucket in a
+    // single stripe and moves on to another one when that slot is busy (see StatisticsStripe), only yielding once it
+    // went through all of them. Readers keep the totals of the window of every stripe (see StatisticsSegmentTree).
+    static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    private volatile StatisticsWindow window = StatisticsWindow.DEFAULT;
+    private volatile StatisticsRollups rollups = new StatisticsRollups();
+    private volatile StatisticsStripe[] stripes = newStripes(
+            ByteBuffer.allocateDirect(getRegionBytes(StatisticsWindow.DEFAULT)), 0, System.currentTimeMillis());
+    // Only set when metrics are enabled, every hook is skipped otherwise.
+    private volatile StatisticsMetrics metrics;
+    // Only set in fixed point mode (statistics.amounts.scale), amounts are only added up in floating point otherwise.
+    private volatile FixedPointAmounts amounts;
+
+    // The version carries on from the previous stripes, so a version never stands for two different contents.
+    void initialize(long currentTimeStampMillis) {
+        initialize(window, currentTimeStampMillis);
+    }
+
+    void initialize(StatisticsWindow window, long currentTimeStampMillis) {
+        initialize(window, ByteBuffer.allocateDirect(getRegionBytes(window)), currentTimeStampMillis);
+    }
+
+    // Starts over with empty stripes stored in the given region of getRegionBytes(window), e.g. mapped from a file. The
+    // window of the stripes starts at the given time, so the first write does not expire a whole window of buckets.
+    void initialize(StatisticsWindow window, ByteBuffer region, long currentTimeStampMillis) {
+        long version = getVersion() + 1;
+        this.window = window;
+        rollups = new StatisticsRollups();
+        stripes = newStripes(region, version, currentTimeStampMillis);
+    }
+
+    // Takes over the stripes stored in the given region by a previous run, keeping what is still inside the window.
+    void attach(StatisticsWindow window, ByteBuffer region, long currentTimestampInMillis) {
+        long version = getVersion() + 1;
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        ByteBuffer[] slices = slice(region, STRIPES, window);
+        StatisticsRollups rollups = this.rollups;
+        this.window = window;
+        stripes = IntStream.range(0, STRIPES)
+                .mapToObj(i -> StatisticsStripe.attach(slices[i], window, rollups, i == 0 ? version : 0,
+                        currentTick))
+                .toArray(StatisticsStripe[]::new);
+    }
+
+    int getStripes() {
+        return STRIPES;
+    }
+
+    StatisticsWindow getWindow() {
+        return window;
+    }
+
+    static int getRegionBytes(StatisticsWindow window) {
+        return STRIPES * window.getStripeBytes();
+    }
+
+    void setMetrics(StatisticsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setAmounts(FixedPointAmounts amounts) {
+        this.amounts = amounts;
+    }
+
+    FixedPointAmounts getAmounts() {
+        return amounts;
+    }
+
+    boolean addTransaction(Transaction transaction, long currentTimestampInMillis) {
+        StatisticsWindow window = this.window;
+        long tick = window.tickOf(transaction.getTimestamp());
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        long units = toUnits(transaction.getAmount());
+        StatisticsMetrics metrics = this.metrics;
+        boolean added = false;
+        if (window.contains(tick, currentTick)) {
+            StatisticsStripe[] stripes = this.stripes;
+            int probe = probe();
+            for (int attempt = 0; ; attempt++) {
+                int result = stripes[(probe + attempt) & (stripes.length - 1)].addAmount(tick,
+                        transaction.getAmount(), units, currentTick);
+                if (result != StatisticsStripe.BUSY) {
+                    added = result == StatisticsStripe.ADDED;
+                    break;
+                }
+                stripeBusy(metrics, attempt, stripes.length);
+            }
+        }
+        if (metrics != null) {
+            if (added) {
+                metrics.transactionsAccepted(1);
+            } else {
+                metrics.transactionsRejected(1);
+            }
+        }
+        return added;
+    }
+
+    // The amount in minor units in fixed point mode, 0 otherwise. Refuses an amount out of range, before anything is
+    // added.
+    long toUnits(double amount) {
+        FixedPointAmounts amounts = this.amounts;
+        if (amounts == null) {
+            return 0;
+        }
+        if (!amounts.isInRange(amount)) {
+            throw new IllegalArgumentException("The amount is out of range at a scale of " + amounts.getScale()
+                    + ": " + amount);
+        }
+        return amounts.toUnits(amount);
+    }
+
+    // Adds every bucket of the batch with a single update, returns the number of transactions accepted.
+    long addTransactions(TransactionBatch batch) {
+        StatisticsMetrics metrics = this.metrics;
+        StatisticsStripe[] stripes = this.stripes;
+        int probe = probe();
+        long accepted = 0;
+        for (int entry = 0; entry < batch.size(); entry++) {
+            for (int attempt = 0; ; attempt++) {
+                int result = stripes[(probe + attempt) & (stripes.length - 1)].addBucket(batch, entry,
+                        batch.getCurrentTick());
+                if (result != StatisticsStripe.BUSY) {
+                    accepted += result == StatisticsStripe.ADDED ? batch.getCount(entry) : 0;
+                    break;
+                }
+                stripeBusy(metrics, attempt, stripes.length);
+            }
+        }
+        if (metrics != null) {
+            metrics.transactionsAccepted(accepted);
+            metrics.transactionsRejected(batch.getTransactions() - accepted);
+        }
+        return accepted;
+    }
+
+    // Adds the buckets still inside the window, e.g. of a previous run which had another number of stripes. The
+    // buckets must be of the current window.
+    void addBuckets(StatisticsBuckets buckets, long currentTimestampInMillis) {
+        StatisticsStripe[] stripes = this.stripes;
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        int probe = probe();
+        for (int index = 0; index < buckets.size(); index++) {
+            for (int attempt = 0; buckets.getCount(index) > 0; attempt++) {
+                if (stripes[(probe + attempt) & (stripes.length - 1)].addBucket(buckets, index, currentTick)
+                        != StatisticsStripe.BUSY) {
+                    break;
+                }
+                stripeBusy(null, attempt, stripes.length);
+            }
+        }
+    }
+
+    // Only the buckets of the window are kept, anything older or in the future is rejected.
+    boolean isWithinWindow(long timestampInMillis, long currentTimestampInMillis) {
+        StatisticsWindow window = this.window;
+        return window.contains(window.tickOf(timestampInMillis), window.tickOf(currentTimestampInMillis));
+    }
+
+    Statistics getAggregatedStatistics(long currentTimestampInMillis) {
+        return getAggregatedStatistics(currentTimestampInMillis, new Statistics());
+    }
+
+    // Allocation free: the totals of the window of every stripe are added to the given statistics, once the stripe has
+    // caught up with the buckets written or expired since its last read (see StatisticsStripe).
+    Statistics getAggregatedStatistics(long currentTimestampInMillis, Statistics statistics) {
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        for (StatisticsStripe stripe : stripes) {
+            stripe.addTo(statistics, currentTick);
+        }
+        return render(statistics);
+    }
+
+    // Also estimates the given percentiles (between 0 and 100) of the amounts, from the merged sketches of the stripes.
+    // Only the last windowInMillis (a whole number of buckets, up to the length of the window), in logarithmic time
+    // with respect to the number of buckets (see StatisticsSegmentTree), together with the given percentiles when not
+    // null.
+    Statistics getAggregatedStatistics(long currentTimestampInMillis, long windowInMillis, double[] percentiles) {
+        StatisticsWindow window = this.window;
+        if (windowInMillis <= 0 || windowInMillis > window.getLengthInMillis()
+                || windowInMillis % window.getBucketMillis() != 0) {
+            throw new IllegalArgumentException("The window must be a whole number of buckets of "
+                    + window.getBucketMillis() + "ms, up to " + window.getLengthInMillis() + "ms");
+        }
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        int windowBuckets = (int) (windowInMillis / window.getBucketMillis());
+        Statistics statistics = new Statistics();
+        long[] sketch = percentiles != null ? new long[PercentileSketch.BINS] : null;
+        for (StatisticsStripe stripe : stripes) {
+            stripe.addTo(statistics, sketch, currentTick, windowBuckets);
+        }
+        if (sketch != null) {
+            statistics.setPercentiles(PercentileSketch.percentiles(sketch, statistics, percentiles));
+        }
+        return render(statistics);
+    }
+
+    Statistics getAggregatedStatistics(long currentTimestampInMillis, double[] percentiles) {
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        Statistics statistics = new Statistics();
+        long[] sketch = new long[PercentileSketch.BINS];
+        for (StatisticsStripe stripe : stripes) {
+            stripe.addTo(statistics, sketch, currentTick);
+        }
+        statistics.setPercentiles(PercentileSketch.percentiles(sketch, statistics, percentiles));
+        return render(statistics);
+    }
+
+    // The minute or hour statistics of the seconds which already left the window, see StatisticsRollups. Every stripe
+    // hands over its expired seconds first, so the ones which have not been written lately do too.
+    List<TimestampedStatistics> getRange(long fromInMillis, long toInMillis, long stepInMillis, double[] percentiles,
+                                         long currentTimestampInMillis) {
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        for (StatisticsStripe stripe : stripes) {
+            stripe.expire(currentTick);
+        }
+        List<TimestampedStatistics> points = rollups.getRange(fromInMillis, toInMillis, stepInMillis, percentiles,
+                currentTimestampInMillis);
+        for (TimestampedStatistics point : points) {
+            render(point.getStatistics());
+        }
+        return points;
+    }
+
+    // In fixed point mode, the totals are converted back from minor units only once the statistics are complete.
+    private Statistics render(Statistics statistics) {
+        FixedPointAmounts amounts = this.amounts;
+        return amounts == null ? statistics : amounts.render(statistics);
+    }
+
+    // The slot of the bucket was busy in the last stripe tried: the next one is tried, yielding first once every
+    // stripe was.
+    private static void stripeBusy(StatisticsMetrics metrics, int attempt, int stripes) {
+        if (metrics != null) {
+            metrics.stripeBusy();
+        }
+        if ((attempt + 1) % stripes == 0) {
+            Thread.yield();
+            if (metrics != null) {
+                metrics.stripesYielded();
+            }
+        }
+    }
+
+    private static int probe() {
+        return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private StatisticsStripe[] newStripes(ByteBuffer region, long version, long currentTimestampInMillis) {
+        StatisticsWindow window = this.window;
+        ByteBuffer[] slices = slice(region, STRIPES, window);
+        StatisticsRollups rollups = this.rollups;
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        return IntStream.range(0, STRIPES)
+                .mapToObj(i -> new StatisticsStripe(slices[i], window, rollups, i == 0 ? version : 0, currentTick))
+                .toArray(StatisticsStripe[]::new);
+    }
+
+    // All stripes share a single region (off-heap or mapped from a file), each of them getting its own slice of it.
+    static ByteBuffer[] slice(ByteBuffer region, int stripes, StatisticsWindow window) {
+        int bytes = window.getStripeBytes();
+        ByteBuffer buffer = region.duplicate();
+        return IntStream.range(0, stripes)
+                .mapToObj(i -> {
+                    buffer.limit((i + 1) * bytes).position(i * bytes);
+                    return buffer.slice();
+                })
+                .toArray(ByteBuffer[]::new);
+    }
+
+    // Grows with every transaction added: within the same second, the statistics stay the same as long as the version
+    // does. Reading the version before the statistics guarantees they contain at least the writes it counts.
+    long getVersion() {
+        long version = 0;
+        for (StatisticsStripe stripe : stripes) {
+            version += stripe.getVersion();
+        }
+        return version;
+    }
+
+    // Buckets expired from the windows of the stripes so far, only for metrics.
+    long getExpiredBuckets() {
+        long expiredBuckets = 0;
+        for (StatisticsStripe stripe : stripes) {
+            expiredBuckets += stripe.getExpiredBuckets();
+        }
+        return expiredBuckets;
+    }
+
+    // The statistics of every bucket of the window, at the index of its tick in the cyclic buffer (see
+    // StatisticsWindow.indexOf). The slots beyond the number of buckets of the window stay empty.
+    Statistics[] getStatistics(long currentTimestampInMillis) {
+        StatisticsWindow window = this.window;
+        StatisticsStripe[] stripes = this.stripes;
+        long currentTick = window.tickOf(currentTimestampInMillis);
+        Statistics[] statistics = new Statistics[window.getSize()];
+        Arrays.setAll(statistics, i -> new Statistics());
+        for (long tick = window.minTickOf(currentTick); tick <= currentTick; tick++) {
+            for (StatisticsStripe stripe : stripes) {
+                stripe.addBucketTo(statistics[window.indexOf(tick)], tick);
+            }
+        }
+        return statistics;
+    }
+
+    // One statistics per bucket of the window, at the index of its tick modulo the number of buckets.
+    Statistics[] getStatistics() {
+        Statistics[] statistics = new Statistics[window.getBuckets()];
+        Arrays.setAll(statistics, i -> new Statistics());
+        for (StatisticsStripe stripe : stripes) {
+            stripe.addBucketsTo(statistics);
+        }
+        return statistics;
+    }
+}
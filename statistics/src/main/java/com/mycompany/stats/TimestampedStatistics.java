@@ -0,0 +1,14 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@AllArgsConstructor
+@Value
+public class TimestampedStatistics {
+    // Start of the step in epoch milliseconds.
+    private long timestamp;
+    @JsonUnwrapped
+    private Statistics statistics;
+}
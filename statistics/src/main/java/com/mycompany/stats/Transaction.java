@@ -1,5 +1,6 @@
 package com.mycompany.stats;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Value;
 
@@ -8,4 +9,11 @@ import lombok.Value;
 public class Transaction {
     private long timestamp;
     private double amount;
+    // Optional dimension (e.g. a merchant id or a currency) the statistics are also broken down by.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String key;
+
+    public Transaction(long timestamp, double amount) {
+        this(timestamp, amount, null);
+    }
 }
@@ -0,0 +1,182 @@
+package com.mycompany.stats;
+
+import java.util.Arrays;
+
+// Transactions of a single batch request, pre-aggregated per bucket so that the aggregator only has to be updated once
+// for every bucket of the batch instead of once per transaction. A batch takes the window and the fixed point mode of
+// the aggregator at the time it is created or cleared: amounts out of the range of the fixed point mode are counted as
+// transactions but not added.
+// Only the buckets the batch touches take memory: one entry per tick, in the order they were first seen, each with its
+// count, sums, min, max and a percentile sketch allocated on first use. A long lived batch keeps its entries when
+// cleared, so reusing it allocates nothing once it has seen as many ticks.
+// Transactions carrying a key are only held until the whole batch has been read and added to the aggregator, so a
+// batch refused half way through adds nothing to the keyed statistics either.
+final class TransactionBatch {
+    private static final int INITIAL_ENTRIES = 4;
+
+    private StatisticsWindow window;
+    private FixedPointAmounts amounts;
+    private long currentTick;
+    private long transactions;
+    // Entry + 1 of every tick of the window, by its distance to the current tick, 0 when not touched.
+    private int[] entryOfTick;
+    private int size;
+    private long[] ticks = new long[INITIAL_ENTRIES];
+    private long[] counts = new long[INITIAL_ENTRIES];
+    private double[] sums = new double[INITIAL_ENTRIES];
+    private long[] sumsInUnits = new long[INITIAL_ENTRIES];
+    private double[] mins = new double[INITIAL_ENTRIES];
+    private double[] maxs = new double[INITIAL_ENTRIES];
+    private int[][] sketches = new int[INITIAL_ENTRIES][];
+    private int keyedSize;
+    private String[] keys = new String[0];
+    private long[] keyedTimestamps = new long[0];
+    private double[] keyedAmounts = new double[0];
+
+    TransactionBatch(long currentTimestampInMillis) {
+        this.window = StatisticsAggregator.getWindow();
+        this.entryOfTick = new int[window.getBuckets()];
+        this.currentTick = window.tickOf(currentTimestampInMillis);
+        this.amounts = StatisticsAggregator.getAmounts();
+    }
+
+    // Allows a long lived connection to reuse its batch for every chunk it receives.
+    void clear(long currentTimestampInMillis) {
+        if (!window.equals(StatisticsAggregator.getWindow())) {
+            window = StatisticsAggregator.getWindow();
+            entryOfTick = new int[window.getBuckets()];
+        } else {
+            for (int entry = 0; entry < size; entry++) {
+                entryOfTick[(int) (currentTick - ticks[entry])] = 0;
+            }
+        }
+        currentTick = window.tickOf(currentTimestampInMillis);
+        amounts = StatisticsAggregator.getAmounts();
+        transactions = 0;
+        size = 0;
+        Arrays.fill(keys, 0, keyedSize, null);
+        keyedSize = 0;
+    }
+
+    // A transaction without a key is only added to the batch.
+    void addTransaction(String key, long timestamp, double amount) {
+        if (key != null) {
+            KeyedStatisticsAggregator.checkKey(key);
+        }
+        addTransaction(timestamp, amount);
+        if (key == null) {
+            return;
+        }
+        if (keyedSize == keys.length) {
+            int capacity = Math.max(INITIAL_ENTRIES, keyedSize * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            keyedTimestamps = Arrays.copyOf(keyedTimestamps, capacity);
+            keyedAmounts = Arrays.copyOf(keyedAmounts, capacity);
+        }
+        keys[keyedSize] = key;
+        keyedTimestamps[keyedSize] = timestamp;
+        keyedAmounts[keyedSize] = amount;
+        keyedSize++;
+    }
+
+    // To be called once the batch has been added to the aggregator.
+    void addKeyedTransactionsTo(KeyedStatisticsAggregator keyedStatisticsAggregator, long currentTimestampInMillis) {
+        for (int i = 0; i < keyedSize; i++) {
+            keyedStatisticsAggregator.addTransaction(keys[i], keyedTimestamps[i], keyedAmounts[i],
+                    currentTimestampInMillis);
+        }
+    }
+
+    void addTransaction(long timestamp, double amount) {
+        transactions++;
+        long tick = window.tickOf(timestamp);
+        if (!window.contains(tick, currentTick) || (amounts != null && !amounts.isInRange(amount))) {
+            return;
+        }
+        int entry = acquireEntry(tick);
+        counts[entry]++;
+        sums[entry] += amount;
+        sumsInUnits[entry] += amounts != null ? amounts.toUnits(amount) : 0;
+        mins[entry] = amount < mins[entry] ? amount : mins[entry];
+        maxs[entry] = amount > maxs[entry] ? amount : maxs[entry];
+        if (sketches[entry] == null) {
+            sketches[entry] = new int[PercentileSketch.BINS];
+        }
+        sketches[entry][PercentileSketch.binOf(amount)]++;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    long getTransactions() {
+        return transactions;
+    }
+
+    // Number of buckets touched, every entry below holding at least one transaction.
+    int size() {
+        return size;
+    }
+
+    long getTick(int entry) {
+        return ticks[entry];
+    }
+
+    long getCount(int entry) {
+        return counts[entry];
+    }
+
+    double getSum(int entry) {
+        return sums[entry];
+    }
+
+    long getSumInUnits(int entry) {
+        return sumsInUnits[entry];
+    }
+
+    double getMin(int entry) {
+        return mins[entry];
+    }
+
+    double getMax(int entry) {
+        return maxs[entry];
+    }
+
+    int[] getSketch(int entry) {
+        return sketches[entry];
+    }
+
+    private int acquireEntry(long tick) {
+        int distance = (int) (currentTick - tick);
+        int entry = entryOfTick[distance] - 1;
+        if (entry >= 0) {
+            return entry;
+        }
+        entry = size++;
+        if (entry == ticks.length) {
+            grow();
+        }
+        entryOfTick[distance] = entry + 1;
+        ticks[entry] = tick;
+        counts[entry] = 0;
+        sums[entry] = 0.0;
+        sumsInUnits[entry] = 0;
+        mins[entry] = Double.MAX_VALUE;
+        maxs[entry] = -Double.MAX_VALUE;
+        if (sketches[entry] != null) {
+            Arrays.fill(sketches[entry], 0);
+        }
+        return entry;
+    }
+
+    private void grow() {
+        int capacity = ticks.length * 2;
+        ticks = Arrays.copyOf(ticks, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+        sumsInUnits = Arrays.copyOf(sumsInUnits, capacity);
+        mins = Arrays.copyOf(mins, capacity);
+        maxs = Arrays.copyOf(maxs, capacity);
+        sketches = Arrays.copyOf(sketches, capacity);
+    }
+}
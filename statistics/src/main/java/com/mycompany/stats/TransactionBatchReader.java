@@ -0,0 +1,69 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Reads a batch given either as a JSON array of transactions or as newline delimited transactions. The input is
+// streamed token by token straight into the TransactionBatch, so no Transaction or list of them is ever created.
+// Transactions carrying a key are held by the batch, see TransactionBatch.addKeyedTransactionsTo.
+final class TransactionBatchReader {
+    private final JsonFactory jsonFactory;
+
+    TransactionBatchReader(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    TransactionBatch read(InputStream inputStream, long currentTimestampInMillis) throws IOException {
+        TransactionBatch batch = new TransactionBatch(currentTimestampInMillis);
+        try (JsonParser parser = jsonFactory.createParser(inputStream)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                readTransaction(parser, batch);
+                token = parser.nextToken();
+            }
+            if (array && parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after the array of transactions");
+            }
+        }
+        return batch;
+    }
+
+    private static void readTransaction(JsonParser parser, TransactionBatch batch) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a transaction object");
+        }
+        long timestamp = 0;
+        double amount = 0.0;
+        String key = null;
+        boolean hasTimestamp = false;
+        boolean hasAmount = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("timestamp".equals(field)) {
+                timestamp = parser.getLongValue();
+                hasTimestamp = true;
+            } else if ("amount".equals(field)) {
+                amount = parser.getDoubleValue();
+                hasAmount = true;
+            } else if ("key".equals(field)) {
+                key = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!hasTimestamp || !hasAmount) {
+            throw new JsonParseException(parser, "Expected a transaction with a timestamp and an amount");
+        }
+        batch.addTransaction(key, timestamp, amount);
+    }
+}
@@ -0,0 +1,11 @@
+package com.mycompany.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@AllArgsConstructor
+@Value
+public class TransactionBatchResult {
+    private long accepted;
+    private long expired;
+}
@@ -0,0 +1,50 @@
+package com.mycompany.stats;
+
+// Optional ingestion mode decoupling request latency from aggregation: request threads only publish transactions into
+// the ring buffer, and a single consumer thread drains it in batches into the aggregator. Being the only writer, the
+// consumer never finds a stripe of the aggregator busy.
+final class TransactionPipeline {
+    private final TransactionRingBuffer ringBuffer;
+    private final int batchSize;
+    private final WaitStrategy waitStrategy;
+    private final TransactionBatch batch = new TransactionBatch(0);
+    private Thread consumer;
+    private volatile boolean running;
+
+    TransactionPipeline(int capacity, int batchSize, WaitStrategy waitStrategy) {
+        this.ringBuffer = new TransactionRingBuffer(capacity);
+        this.batchSize = batchSize;
+        this.waitStrategy = waitStrategy;
+    }
+
+    void start() {
+        running = true;
+        consumer = new Thread(this::consume, "transaction-pipeline");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // Transactions already published are still applied before stopping.
+    void stop() throws InterruptedException {
+        running = false;
+        consumer.join();
+    }
+
+    boolean publish(long timestamp, double amount) {
+        return ringBuffer.tryPublish(timestamp, amount);
+    }
+
+    private void consume() {
+        int idleCount = 0;
+        while (running || !ringBuffer.isEmpty()) {
+            if (ringBuffer.isEmpty()) {
+                waitStrategy.idle(++idleCount);
+                continue;
+            }
+            idleCount = 0;
+            batch.clear(System.currentTimeMillis());
+            ringBuffer.drainTo(batch, batchSize);
+            StatisticsAggregator.addTransactions(batch);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.mycompany.stats;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "statistics.pipeline.enabled", havingValue = "true")
+class TransactionPipelineConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    TransactionPipeline transactionPipeline(StatisticsProperties properties) {
+        StatisticsProperties.Pipeline pipeline = properties.getPipeline();
+        return new TransactionPipeline(pipeline.getCapacity(), pipeline.getBatchSize(), pipeline.getWaitStrategy());
+    }
+}
@@ -0,0 +1,65 @@
+package com.mycompany.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded multi producer / single consumer ring buffer with preallocated slots (Disruptor style). Producers claim a
+// sequence with CAS, write the transaction into the slot of that sequence and then publish the sequence in the slot,
+// the consumer reads slots in order as long as they hold the sequence it is waiting for.
+final class TransactionRingBuffer {
+    private final int mask;
+    private final long[] timestamps;
+    private final double[] amounts;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    // Only ever written by the consumer.
+    private final AtomicLong consumed = new AtomicLong();
+
+    TransactionRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        timestamps = new long[capacity];
+        amounts = new double[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int index = 0; index < capacity; index++) {
+            published.set(index, -1);
+        }
+    }
+
+    // Returns false without waiting when the ring is full.
+    boolean tryPublish(long timestamp, double amount) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() > mask) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int index = (int) sequence & mask;
+        timestamps[index] = timestamp;
+        amounts[index] = amount;
+        published.lazySet(index, sequence);
+        return true;
+    }
+
+    boolean isEmpty() {
+        long sequence = consumed.get();
+        return published.get((int) sequence & mask) != sequence;
+    }
+
+    // Must only be called from the single consumer thread.
+    int drainTo(TransactionBatch batch, int limit) {
+        long sequence = consumed.get();
+        int drained = 0;
+        while (drained < limit && published.get((int) sequence & mask) == sequence) {
+            int index = (int) sequence & mask;
+            batch.addTransaction(timestamps[index], amounts[index]);
+            sequence++;
+            drained++;
+        }
+        consumed.lazySet(sequence);
+        return drained;
+    }
+}
@@ -0,0 +1,37 @@
+package com.mycompany.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// How the pipeline consumer waits for transactions when the ring buffer is empty, trading latency against CPU usage:
+// BUSY_SPIN and YIELDING take a whole core even when idle, SLEEPING (the default) parks once it has spun for a while.
+public enum WaitStrategy {
+    BUSY_SPIN {
+        @Override
+        void idle(int idleCount) {
+        }
+    },
+    YIELDING {
+        @Override
+        void idle(int idleCount) {
+            if (idleCount > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+    SLEEPING {
+        @Override
+        void idle(int idleCount) {
+            if (idleCount > 2 * SPIN_TRIES) {
+                LockSupport.parkNanos(SLEEP_NANOS);
+            } else if (idleCount > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    abstract void idle(int idleCount);
+}
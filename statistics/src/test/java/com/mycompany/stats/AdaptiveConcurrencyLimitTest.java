@@ -0,0 +1,90 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void checkRequestsOverTheLimitAreShed() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, TARGET_NANOS, 0.9);
+        long first = limit.tryAcquire();
+        long second = limit.tryAcquire();
+        assertThat(first).isNotNegative();
+        assertThat(second).isNotNegative();
+        assertThat(limit.tryAcquire()).isEqualTo(-1);
+        assertThat(limit.getInFlight()).isEqualTo(2);
+        assertThat(limit.getShed()).isEqualTo(1);
+
+        limit.release(first, FAST_NANOS);
+        assertThat(limit.tryAcquire()).isNotNegative();
+        assertThat(limit.getShed()).isEqualTo(1);
+    }
+
+    @Test
+    public void checkLimitGrowsAdditivelyWhileInUseAndFast() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 8, TARGET_NANOS, 0.9);
+        for (int round = 0; round < 100; round++) {
+            int admitted = limit.getLimit();
+            long[] tickets = new long[admitted];
+            for (int i = 0; i < admitted; i++) {
+                tickets[i] = limit.tryAcquire();
+            }
+            assertThat(limit.tryAcquire()).isEqualTo(-1);
+            for (long ticket : tickets) {
+                limit.release(ticket, FAST_NANOS);
+            }
+            assertThat(limit.getLimit()).isBetween(admitted, Math.min(admitted + 1, 8));
+        }
+        assertThat(limit.getLimit()).isEqualTo(8);
+    }
+
+    @Test
+    public void checkIdleLimitDoesNotGrow() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 8, TARGET_NANOS, 0.9);
+        for (int i = 0; i < 100; i++) {
+            limit.release(limit.tryAcquire(), FAST_NANOS);
+        }
+        assertThat(limit.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    public void checkLimitBacksOffOncePerSlowEpisode() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 20, TARGET_NANOS, 0.5);
+        long[] tickets = new long[10];
+        for (int i = 0; i < tickets.length; i++) {
+            tickets[i] = limit.tryAcquire();
+        }
+        for (long ticket : tickets) {
+            limit.release(ticket, SLOW_NANOS);
+        }
+        assertThat(limit.getLimit()).isEqualTo(5);
+
+        // Admitted after the first decrease, so part of a new episode.
+        limit.release(limit.tryAcquire(), SLOW_NANOS);
+        assertThat(limit.getLimit()).isEqualTo(2);
+        limit.release(limit.tryAcquire(), SLOW_NANOS);
+        assertThat(limit.getLimit()).isEqualTo(2);
+        assertThat(limit.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectInvalidLimits() {
+        assertThatThrownBy(() -> new AdaptiveConcurrencyLimit(1, 0, 10, TARGET_NANOS, 0.9))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveConcurrencyLimit(20, 1, 10, TARGET_NANOS, 0.9))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveConcurrencyLimit(5, 1, 10, 0, 0.9))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveConcurrencyLimit(5, 1, 10, TARGET_NANOS, 1.0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
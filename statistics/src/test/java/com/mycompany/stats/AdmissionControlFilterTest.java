@@ -0,0 +1,97 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlFilterTest {
+
+    private final AdaptiveConcurrencyLimit writes =
+            new AdaptiveConcurrencyLimit(1, 1, 1, TimeUnit.SECONDS.toNanos(10), 0.9);
+    private final AdaptiveConcurrencyLimit reads =
+            new AdaptiveConcurrencyLimit(1, 1, 1, TimeUnit.SECONDS.toNanos(10), 0.9);
+    private final AdmissionControlFilter filter = new AdmissionControlFilter(writes, reads, 2);
+
+    @Test
+    public void checkWritesAreShedWhileReadsGoOn() throws Exception {
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain blocking = (request, response) -> {
+            admitted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CompletableFuture<MockHttpServletResponse> slowWrite = CompletableFuture.supplyAsync(() -> {
+            try {
+                return filter(request("POST", "/api/v1/transactions"), blocking);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(admitted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        MockHttpServletResponse shedWrite =
+                filter(request("POST", "/api/v1/transactions/batch"), new MockFilterChain());
+        assertThat(shedWrite.getStatus()).isEqualTo(429);
+        assertThat(shedWrite.getHeader("Retry-After")).isEqualTo("2");
+
+        MockFilterChain read = new MockFilterChain();
+        assertThat(filter(request("GET", "/api/v1/statistics"), read).getStatus()).isEqualTo(200);
+        assertThat(read.getRequest()).isNotNull();
+
+        release.countDown();
+        assertThat(slowWrite.get(10, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+        assertThat(filter(request("POST", "/api/v1/transactions"), new MockFilterChain()).getStatus()).isEqualTo(200);
+        assertThat(metric("statistics.admission.writes.shed")).isEqualTo(1L);
+        assertThat(metric("statistics.admission.writes.in-flight")).isEqualTo(0);
+        assertThat(metric("statistics.admission.reads.shed")).isEqualTo(0L);
+    }
+
+    @Test
+    public void checkReadsAreShedWith503() throws Exception {
+        long ticket = reads.tryAcquire();
+        MockHttpServletResponse shedRead = filter(request("GET", "/api/v1/statistics/EUR"), new MockFilterChain());
+        assertThat(shedRead.getStatus()).isEqualTo(503);
+        assertThat(shedRead.getHeader("Retry-After")).isEqualTo("2");
+        reads.release(ticket, 0);
+    }
+
+    @Test
+    public void checkOtherRequestsAreNotLimited() throws Exception {
+        writes.tryAcquire();
+        reads.tryAcquire();
+        for (MockHttpServletRequest request : new MockHttpServletRequest[]{request("GET", "/api/v1/statistics/stream"),
+                request("GET", "/api/v1/transactions"), request("GET", "/health")}) {
+            MockFilterChain chain = new MockFilterChain();
+            assertThat(filter(request, chain).getStatus()).isEqualTo(200);
+            assertThat(chain.getRequest()).isNotNull();
+        }
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request, FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        return new MockHttpServletRequest(method, path);
+    }
+
+    private Object metric(String name) {
+        return filter.metrics().stream().filter(metric -> metric.getName().equals(name)).findFirst()
+                .map(Metric::getValue).orElse(null);
+    }
+}
@@ -0,0 +1,64 @@
+package com.mycompany.stats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryTransactionServerTest {
+
+    private BinaryTransactionServer server;
+    private BinaryTransactionClient client;
+
+    @Before
+    public void setup() throws Exception {
+        StatisticsAggregator.initialize(System.currentTimeMillis());
+        server = new BinaryTransactionServer(0);
+        server.start();
+        client = new BinaryTransactionClient(new InetSocketAddress("localhost", server.getPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void checkStatisticsAfterSendingBinaryTransactions() throws Exception {
+        long now = System.currentTimeMillis();
+        TransactionBatchResult result = client.send(
+                new long[]{now - 10000, now - 20000, now - 30000, now - 80000},
+                new double[]{100.00, 200.00, 300.00, 400.00});
+        assertThat(result.getAccepted()).isEqualTo(3);
+        assertThat(result.getExpired()).isEqualTo(1);
+
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis());
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getSum()).isEqualTo(600.00);
+        assertThat(statistics.getMin()).isEqualTo(100.00);
+        assertThat(statistics.getMax()).isEqualTo(300.00);
+        assertThat(statistics.getAverage()).isEqualTo(200.00);
+    }
+
+    // Enough records to span several reads on the server, split at arbitrary record boundaries.
+    @Test
+    public void checkStatisticsAfterSendingManyBinaryTransactions() throws Exception {
+        long now = System.currentTimeMillis();
+        int count = 100000;
+        long[] timestamps = IntStream.range(0, count).mapToLong(i -> now - (i % 50) * 1000).toArray();
+        double[] amounts = IntStream.range(0, count).mapToDouble(i -> (i % 100) + 1).toArray();
+        TransactionBatchResult result = client.send(timestamps, amounts);
+        assertThat(result.getAccepted()).isEqualTo(count);
+        assertThat(result.getExpired()).isEqualTo(0);
+
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis());
+        assertThat(statistics.getCount()).isEqualTo(count);
+        assertThat(statistics.getSum()).isEqualTo(count / 100 * 5050.0);
+        assertThat(statistics.getMin()).isEqualTo(1.00);
+        assertThat(statistics.getMax()).isEqualTo(100.00);
+    }
+}
@@ -0,0 +1,100 @@
+package com.mycompany.stats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FixedPointAmountsTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    @Before
+    public void setup() {
+        StatisticsAggregator.setAmounts(new FixedPointAmounts(2));
+        StatisticsAggregator.initialize(StatisticsWindow.DEFAULT, MOCK_TIME_STAMP_IN_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        StatisticsAggregator.setAmounts(null);
+    }
+
+    @Test
+    public void checkSumsAreExact() {
+        for (int i = 0; i < 10; i++) {
+            StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 0.1),
+                    MOCK_TIME_STAMP_IN_MILLIS);
+        }
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 0.2), MOCK_TIME_STAMP_IN_MILLIS);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(statistics.getCount()).isEqualTo(11);
+        assertThat(statistics.getSum()).isEqualTo(1.2);
+        assertThat(statistics.getAverage()).isEqualTo(1.2 / 11);
+        assertThat(statistics.getMin()).isEqualTo(0.1);
+        assertThat(statistics.getMax()).isEqualTo(0.2);
+    }
+
+    @Test
+    public void checkSumsOfConcurrentWritersAreExact() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS - i % 3 * 1000, 0.1),
+                            MOCK_TIME_STAMP_IN_MILLIS);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(statistics.getCount()).isEqualTo(80000);
+        assertThat(statistics.getSum()).isEqualTo(8000.0);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS, 2000, null).getSum())
+                .isEqualTo(5333.6);
+    }
+
+    @Test
+    public void checkSumsStayExactOnceBucketsExpire() {
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS - 59000, 0.1),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 0.2), MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).getSum()).isEqualTo(0.3);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 1000);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getSum()).isEqualTo(0.2);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 1000, 2000, null).getSum())
+                .isEqualTo(0.2);
+    }
+
+    @Test
+    public void checkBatchesSkipAmountsOutOfRange() {
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS, 0.1);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS, 0.2);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS, 1e15);
+        assertThat(StatisticsAggregator.addTransactions(batch)).isEqualTo(2);
+        assertThat(batch.getTransactions()).isEqualTo(3);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).getSum()).isEqualTo(0.3);
+    }
+
+    @Test
+    public void shouldRejectAmountsOutOfRange() {
+        assertThatThrownBy(() -> StatisticsAggregator.addTransaction(
+                new Transaction(MOCK_TIME_STAMP_IN_MILLIS, -1e15), MOCK_TIME_STAMP_IN_MILLIS))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new FixedPointAmounts(FixedPointAmounts.MAX_SCALE + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
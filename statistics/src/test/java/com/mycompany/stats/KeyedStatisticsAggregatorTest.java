@@ -0,0 +1,148 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KeyedStatisticsAggregatorTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    private final KeyedStatisticsAggregator aggregator = new KeyedStatisticsAggregator(StatisticsWindow.DEFAULT,
+            100000);
+
+    @Test
+    public void checkStatisticsArePerKey() {
+        aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS - 10000, 100.00, MOCK_TIME_STAMP_IN_MILLIS);
+        aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS - 5000, 300.00, MOCK_TIME_STAMP_IN_MILLIS);
+        aggregator.addTransaction("USD", MOCK_TIME_STAMP_IN_MILLIS, 50.00, MOCK_TIME_STAMP_IN_MILLIS);
+
+        Statistics statistics = aggregator.getStatistics("EUR", MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getSum()).isEqualTo(400.00);
+        assertThat(statistics.getMin()).isEqualTo(100.00);
+        assertThat(statistics.getMax()).isEqualTo(300.00);
+        assertThat(statistics.getAverage()).isEqualTo(200.00);
+        assertThat(aggregator.getStatistics("USD", MOCK_TIME_STAMP_IN_MILLIS).getSum()).isEqualTo(50.00);
+        assertThat(aggregator.getStatistics("GBP", MOCK_TIME_STAMP_IN_MILLIS).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void checkTransactionsExpireAndIdleKeysAreEvicted() {
+        assertThat(aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS - 80000, 100.00,
+                MOCK_TIME_STAMP_IN_MILLIS)).isFalse();
+        aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS - 50000, 100.00, MOCK_TIME_STAMP_IN_MILLIS);
+        aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS, 300.00, MOCK_TIME_STAMP_IN_MILLIS);
+        aggregator.addTransaction("USD", MOCK_TIME_STAMP_IN_MILLIS - 50000, 50.00, MOCK_TIME_STAMP_IN_MILLIS);
+
+        Statistics statistics = aggregator.getStatistics("EUR", MOCK_TIME_STAMP_IN_MILLIS + 10000);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getMin()).isEqualTo(300.00);
+        assertThat(aggregator.getStatistics("USD", MOCK_TIME_STAMP_IN_MILLIS + 10000).isEmpty()).isTrue();
+        assertThat(aggregator.size()).isEqualTo(1);
+
+        assertThat(aggregator.getTopKeysBySum(10, MOCK_TIME_STAMP_IN_MILLIS + 60000)).isEmpty();
+        assertThat(aggregator.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void checkKeysFollowTheWindowOfTheAggregator() {
+        KeyedStatisticsAggregator aggregator = new KeyedStatisticsAggregator(new StatisticsWindow(100, 100), 16);
+        assertThat(aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS - 10000, 100.00,
+                MOCK_TIME_STAMP_IN_MILLIS)).isFalse();
+        aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS - 9900, 200.00, MOCK_TIME_STAMP_IN_MILLIS);
+        aggregator.addTransaction("EUR", MOCK_TIME_STAMP_IN_MILLIS - 50, 300.00, MOCK_TIME_STAMP_IN_MILLIS);
+
+        assertThat(aggregator.getStatistics("EUR", MOCK_TIME_STAMP_IN_MILLIS).getSum()).isEqualTo(500.00);
+        assertThat(aggregator.getStatistics("EUR", MOCK_TIME_STAMP_IN_MILLIS + 100).getSum()).isEqualTo(300.00);
+    }
+
+    @Test
+    public void checkTimestampsBefore1970() {
+        long currentTimestampInMillis = -1000000;
+        aggregator.addTransaction("EUR", currentTimestampInMillis - 59000, 100.00, currentTimestampInMillis);
+        aggregator.addTransaction("EUR", currentTimestampInMillis - 500, 200.00, currentTimestampInMillis);
+
+        assertThat(aggregator.getStatistics("EUR", currentTimestampInMillis).getSum()).isEqualTo(300.00);
+        assertThat(aggregator.getStatistics("EUR", currentTimestampInMillis + 1000).getSum()).isEqualTo(200.00);
+    }
+
+    @Test
+    public void checkManyKeysAreKeptAndEvicted() {
+        for (int i = 0; i < 50000; i++) {
+            aggregator.addTransaction("merchant-" + i, MOCK_TIME_STAMP_IN_MILLIS - (i % 2) * 30000, i,
+                    MOCK_TIME_STAMP_IN_MILLIS);
+        }
+        assertThat(aggregator.size()).isEqualTo(50000);
+
+        // Half of the keys go idle, and are replaced by new ones.
+        for (int i = 50000; i < 75000; i++) {
+            aggregator.addTransaction("merchant-" + i, MOCK_TIME_STAMP_IN_MILLIS + 30000, i,
+                    MOCK_TIME_STAMP_IN_MILLIS + 30000);
+        }
+        for (int i = 0; i < 75000; i++) {
+            Statistics statistics = aggregator.getStatistics("merchant-" + i, MOCK_TIME_STAMP_IN_MILLIS + 30000);
+            assertThat(statistics.getCount()).isEqualTo(i < 50000 && i % 2 == 1 ? 0 : 1);
+        }
+        assertThat(aggregator.size()).isEqualTo(50000);
+    }
+
+    @Test
+    public void checkNewKeysAreRejectedOnceAllAreInUse() {
+        KeyedStatisticsAggregator aggregator = new KeyedStatisticsAggregator(StatisticsWindow.DEFAULT, 1);
+        int accepted = 0;
+        for (int i = 0; i < 1000; i++) {
+            accepted += aggregator.addTransaction("merchant-" + i, MOCK_TIME_STAMP_IN_MILLIS, 1.00,
+                    MOCK_TIME_STAMP_IN_MILLIS) ? 1 : 0;
+        }
+        assertThat(accepted).isLessThan(1000);
+        assertThat(aggregator.size()).isEqualTo(accepted);
+    }
+
+    @Test
+    public void checkTopKeysBySum() {
+        for (int i = 0; i < 1000; i++) {
+            aggregator.addTransaction("merchant-" + i, MOCK_TIME_STAMP_IN_MILLIS, i, MOCK_TIME_STAMP_IN_MILLIS);
+            aggregator.addTransaction("merchant-" + i, MOCK_TIME_STAMP_IN_MILLIS - 1000, i, MOCK_TIME_STAMP_IN_MILLIS);
+        }
+        List<KeyedStatistics> top = aggregator.getTopKeysBySum(3, MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(top.stream().map(KeyedStatistics::getKey).collect(Collectors.toList()))
+                .containsExactly("merchant-999", "merchant-998", "merchant-997");
+        assertThat(top.get(0).getStatistics().getSum()).isEqualTo(1998.00);
+        assertThat(top.get(0).getStatistics().getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void checkMaxKeysFollowTheBucketsOfTheWindow() {
+        StatisticsProperties.Keyed keyed = new StatisticsProperties.Keyed();
+        keyed.setMaxBytes(64 * 1024 * 1024);
+        assertThat(keyed.toMaxKeys(60)).isEqualTo(64 * 1024 * 1024 / (60 * 40 + 64));
+        assertThat(keyed.toMaxKeys(600)).isEqualTo(64 * 1024 * 1024 / (600 * 40 + 64));
+
+        keyed.setMaxKeys(20000);
+        assertThat(keyed.toMaxKeys(60)).isEqualTo(20000);
+        assertThatThrownBy(() -> keyed.toMaxKeys(600)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldRejectKeysOfOtherEndpoints() {
+        assertThatThrownBy(() -> KeyedStatisticsAggregator.checkKey("partial"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KeyedStatisticsAggregator.checkKey("stream"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS)
+                .addTransaction("range", MOCK_TIME_STAMP_IN_MILLIS, 1.00))
+                .isInstanceOf(IllegalArgumentException.class);
+        KeyedStatisticsAggregator.checkKey("top");
+    }
+
+    @Test
+    public void shouldRejectInvalidTopKeys() {
+        assertThatThrownBy(() -> aggregator.getTopKeysBySum(0, MOCK_TIME_STAMP_IN_MILLIS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,41 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void checkEveryValueFallsInItsBucket() {
+        for (long nanos = 0; nanos < 1_000_000; nanos++) {
+            int index = LatencyHistogram.indexOf(nanos);
+            assertThat(LatencyHistogram.lowerBoundOf(index)).isLessThanOrEqualTo(nanos);
+            assertThat(LatencyHistogram.lowerBoundOf(index + 1)).isGreaterThan(nanos);
+        }
+        assertThat(LatencyHistogram.lowerBoundOf(LatencyHistogram.indexOf(Long.MAX_VALUE)))
+                .isLessThanOrEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void checkPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getMeanNanos()).isEqualTo(500500.0);
+        assertThat(histogram.getMaxNanos()).isEqualTo(1_000_000);
+        assertThat(histogram.getPercentileNanos(50)).isBetween(500_000L, 562_500L);
+        assertThat(histogram.getPercentileNanos(99)).isBetween(990_000L, 1_000_000L);
+        assertThat(histogram.getPercentileNanos(100)).isEqualTo(1_000_000);
+    }
+
+    @Test
+    public void checkEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getMeanNanos()).isEqualTo(0.0);
+        assertThat(histogram.getPercentileNanos(99)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,61 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+public class PercentileSketchTest {
+
+    @Test
+    public void checkPercentilesAreWithinRelativeAccuracy() {
+        Random random = new Random(42);
+        double[] amounts = random.doubles(100000, 0.05, 50000.0).toArray();
+        long[] bins = new long[PercentileSketch.BINS];
+        Statistics statistics = new Statistics();
+        for (double amount : amounts) {
+            bins[PercentileSketch.binOf(amount)]++;
+            statistics.addStatistics(1, amount, amount, amount);
+        }
+        Arrays.sort(amounts);
+
+        Map<String, Double> percentiles = PercentileSketch.percentiles(
+                bins, statistics, new double[]{50, 90, 99, 99.9});
+        assertThat(percentiles.keySet()).containsExactly("50", "90", "99", "99.9");
+        assertThat(percentiles.get("50")).isCloseTo(amounts[49999], within(amounts[49999] * 0.02));
+        assertThat(percentiles.get("90")).isCloseTo(amounts[89999], within(amounts[89999] * 0.02));
+        assertThat(percentiles.get("99")).isCloseTo(amounts[98999], within(amounts[98999] * 0.02));
+        assertThat(percentiles.get("99.9")).isCloseTo(amounts[99899], within(amounts[99899] * 0.02));
+    }
+
+    @Test
+    public void checkPercentilesAreClampedToMinAndMax() {
+        long[] bins = new long[PercentileSketch.BINS];
+        bins[PercentileSketch.binOf(-5.0)]++;
+        bins[PercentileSketch.binOf(100.0)]++;
+        Statistics statistics = new Statistics().addStatistics(2, 95.0, -5.0, 100.0);
+
+        Map<String, Double> percentiles = PercentileSketch.percentiles(bins, statistics, new double[]{0, 100});
+        assertThat(percentiles.get("0")).isEqualTo(-5.0);
+        assertThat(percentiles.get("100")).isEqualTo(100.0);
+    }
+
+    @Test
+    public void checkPercentilesOfEmptySketchAreZero() {
+        Map<String, Double> percentiles = PercentileSketch.percentiles(
+                new long[PercentileSketch.BINS], new Statistics(), new double[]{50});
+        assertThat(percentiles.get("50")).isEqualTo(0.0);
+    }
+
+    @Test
+    public void shouldRejectPercentilesOutOfRange() {
+        assertThatThrownBy(() -> PercentileSketch.percentiles(
+                new long[PercentileSketch.BINS], new Statistics(), new double[]{101}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -3,13 +3,18 @@ package com.mycompany.stats;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 
 public class StatisticsAggregatorTest {
 
@@ -25,6 +30,9 @@ public class StatisticsAggregatorTest {
 
     private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
 
+    private static final int STRESS_THREADS = 32;
+    private static final int STRESS_TRANSACTIONS_PER_THREAD = 20000;
+
 
     @Before
     public void setup() {
@@ -129,6 +137,131 @@ public class StatisticsAggregatorTest {
         assertThat(statistics.getAverage()).isEqualTo(TEST_AVG);
     }
 
+    @Test
+    public void checkStatisticsOnAddingBatchGroupedBySecond() {
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS + 10000);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS + 1000, TEST_AMOUNT);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS + 1500, TEST_AMOUNT2);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS + 4000, TEST_AMOUNT3);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS + 4999, TEST_AMOUNT4);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS - 60000, TEST_AMOUNT4);
+        assertThat(StatisticsAggregator.addTransactions(batch)).isEqualTo(4);
+        assertThat(batch.getTransactions()).isEqualTo(5);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 20000);
+        assertThat(statistics.getCount()).isEqualTo(4);
+        assertThat(statistics.getSum()).isEqualTo(TEST_SUM);
+        assertThat(statistics.getMin()).isEqualTo(TEST_MIN);
+        assertThat(statistics.getMax()).isEqualTo(TEST_MAX);
+        assertThat(StatisticsAggregator.getStatistics()[(int) ((MOCK_TIME_STAMP_IN_MILLIS + 4000) / 1000 % 60)]
+                .getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void checkPercentilesOfTransactionsInWindow() {
+        for (int i = 1; i <= 100; i++) {
+            StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS + (i % 2) * 30000, i),
+                    MOCK_TIME_STAMP_IN_MILLIS + 30000);
+        }
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(
+                MOCK_TIME_STAMP_IN_MILLIS + 30000, new double[]{50, 99});
+        assertThat(statistics.getCount()).isEqualTo(100);
+        assertThat(statistics.getPercentiles().get("50")).isCloseTo(50.0, within(1.0));
+        assertThat(statistics.getPercentiles().get("99")).isCloseTo(99.0, within(2.0));
+
+        // Only the odd amounts, added 30 seconds later, are left.
+        statistics = StatisticsAggregator.getAggregatedStatistics(
+                MOCK_TIME_STAMP_IN_MILLIS + 60000, new double[]{0, 100});
+        assertThat(statistics.getCount()).isEqualTo(50);
+        assertThat(statistics.getPercentiles().get("0")).isEqualTo(1.0);
+        assertThat(statistics.getPercentiles().get("100")).isEqualTo(99.0);
+    }
+
+    @Test
+    public void checkEveryWindowMatchesTheSecondsItCovers() {
+        long now = MOCK_TIME_STAMP_IN_MILLIS + 90000;
+        for (int i = 0; i < 500; i++) {
+            long timestamp = now - 120000 + i * 240;
+            StatisticsAggregator.addTransaction(new Transaction(timestamp - (i * 7919L) % 30000, (i * 31) % 1000),
+                    timestamp);
+        }
+        Statistics[] seconds = StatisticsAggregator.getStatistics(now);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(now).getCount()).isGreaterThan(100);
+        for (int window = 1; window <= 60; window++) {
+            Statistics expected = new Statistics();
+            for (long second = now / 1000 - (window - 1); second <= now / 1000; second++) {
+                expected.addStatistics(seconds[StatisticsAggregator.getWindow().indexOf(second)]);
+            }
+            Statistics statistics = StatisticsAggregator.getAggregatedStatistics(now, window * 1000L, null);
+            assertThat(statistics.getCount()).isEqualTo(expected.getCount());
+            assertThat(statistics.getSum()).isEqualTo(expected.getSum());
+            assertThat(statistics.getMin()).isEqualTo(expected.getMin());
+            assertThat(statistics.getMax()).isEqualTo(expected.getMax());
+        }
+        assertThat(StatisticsAggregator.getAggregatedStatistics(now, 60000, null))
+                .isEqualTo(StatisticsAggregator.getAggregatedStatistics(now));
+    }
+
+    @Test
+    public void checkPercentilesOfAWindow() {
+        for (int i = 1; i <= 100; i++) {
+            StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS + (i % 2) * 30000, i),
+                    MOCK_TIME_STAMP_IN_MILLIS + 30000);
+        }
+        // Only the odd amounts were added within the last 10 seconds.
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(
+                MOCK_TIME_STAMP_IN_MILLIS + 30000, 10000, new double[]{0, 100});
+        assertThat(statistics.getCount()).isEqualTo(50);
+        assertThat(statistics.getPercentiles().get("0")).isEqualTo(1.0);
+        assertThat(statistics.getPercentiles().get("100")).isEqualTo(99.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWindowLongerThan60Seconds() {
+        StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS, 61000, null);
+    }
+
+    @Test
+    public void checkPercentilesOfBatchTransactions() {
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS + 10000);
+        for (int i = 1; i <= 100; i++) {
+            batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS + (i % 10) * 1000, i);
+        }
+        StatisticsAggregator.addTransactions(batch);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(
+                MOCK_TIME_STAMP_IN_MILLIS + 10000, new double[]{50});
+        assertThat(statistics.getPercentiles().get("50")).isCloseTo(50.0, within(1.0));
+    }
+
+    @Test
+    public void checkNoBucketExpiresOnFirstWriteAfterInitialize() {
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, TEST_AMOUNT),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(StatisticsAggregator.getExpiredBuckets()).isEqualTo(0);
+        StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 2000);
+        assertThat(StatisticsAggregator.getExpiredBuckets()).isEqualTo(2 * StatisticsAggregator.getStripes());
+    }
+
+    @Test
+    public void checkBatchReusedAfterClear() {
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS);
+        for (int i = 0; i < 10; i++) {
+            batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS - i * 1000, TEST_AMOUNT4);
+        }
+        assertThat(batch.size()).isEqualTo(10);
+        batch.clear(MOCK_TIME_STAMP_IN_MILLIS + 5000);
+        assertThat(batch.size()).isEqualTo(0);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS, TEST_AMOUNT);
+        batch.addTransaction(MOCK_TIME_STAMP_IN_MILLIS + 5000, TEST_AMOUNT2);
+        assertThat(batch.size()).isEqualTo(2);
+        assertThat(StatisticsAggregator.addTransactions(batch)).isEqualTo(2);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(
+                MOCK_TIME_STAMP_IN_MILLIS + 5000, new double[]{100});
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getSum()).isEqualTo(TEST_AMOUNT + TEST_AMOUNT2);
+        assertThat(statistics.getMax()).isEqualTo(TEST_AMOUNT2);
+        assertThat(statistics.getPercentiles().get("100")).isEqualTo(TEST_AMOUNT2);
+    }
+
     // This test validates that for a particular timestamp, only aggregation of the last 60 seconds transaction is done.
     @Test
     public void checkStatisticsOnAddingMultipleTransactionsWithHighTimestampDifference() {
@@ -150,4 +283,175 @@ public class StatisticsAggregatorTest {
         assertThat(statistics.getMax()).isEqualTo(400.00);
         assertThat(statistics.getAverage()).isEqualTo(350.00);
     }
+
+    // Many writers hitting the same second and the whole window at the same time must not lose any update.
+    @Test
+    public void checkStatisticsOnContendedConcurrentAddingTransactions() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(STRESS_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(STRESS_THREADS);
+        for (int thread = 0; thread < STRESS_THREADS; thread++) {
+            boolean sameSecond = thread % 2 == 0;
+            executorService.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < STRESS_TRANSACTIONS_PER_THREAD; i++) {
+                        long timestamp = sameSecond
+                                ? MOCK_TIME_STAMP_IN_MILLIS + 30000
+                                : MOCK_TIME_STAMP_IN_MILLIS + (i % 60) * 1000;
+                        StatisticsAggregator.addTransaction(
+                                new Transaction(timestamp, (i % 100) + 1), MOCK_TIME_STAMP_IN_MILLIS + 59000);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        done.await();
+        executorService.shutdown();
+
+        long expectedCount = (long) STRESS_THREADS * STRESS_TRANSACTIONS_PER_THREAD;
+        double expectedSum = STRESS_THREADS * (STRESS_TRANSACTIONS_PER_THREAD / 100) * 5050.0;
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 59000);
+        assertThat(statistics.getCount()).isEqualTo(expectedCount);
+        assertThat(statistics.getSum()).isEqualTo(expectedSum);
+        assertThat(statistics.getMin()).isEqualTo(1.00);
+        assertThat(statistics.getMax()).isEqualTo(100.00);
+        assertThat(statistics.getAverage()).isEqualTo(50.50);
+    }
+
+    // Writers racing to rotate the same slot to a newer second must all end up in that second's bucket.
+    @Test
+    public void checkStatisticsOnConcurrentlyRotatingSameSlot() throws InterruptedException {
+        StatisticsAggregator.addTransaction(
+                new Transaction(MOCK_TIME_STAMP_IN_MILLIS, TEST_AMOUNT4), MOCK_TIME_STAMP_IN_MILLIS);
+        ExecutorService executorService = Executors.newFixedThreadPool(STRESS_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(STRESS_THREADS);
+        for (int thread = 0; thread < STRESS_THREADS; thread++) {
+            executorService.submit(() -> {
+                try {
+                    start.await();
+                    StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS + 60000, TEST_AMOUNT),
+                            MOCK_TIME_STAMP_IN_MILLIS + 60000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        done.await();
+        executorService.shutdown();
+
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 60000);
+        assertThat(statistics.getCount()).isEqualTo(STRESS_THREADS);
+        assertThat(statistics.getSum()).isEqualTo(STRESS_THREADS * TEST_AMOUNT);
+        assertThat(statistics.getMax()).isEqualTo(TEST_AMOUNT);
+    }
+
+    @Test
+    public void checkWindowTotalsOnExpiringTransactionsOneSecondAtATime() {
+        for (int i = 0; i < 60; i++) {
+            StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS + i * 1000, i + 1),
+                    MOCK_TIME_STAMP_IN_MILLIS + 59000);
+        }
+        for (int i = 0; i < 60; i++) {
+            Statistics statistics = StatisticsAggregator.getAggregatedStatistics(
+                    MOCK_TIME_STAMP_IN_MILLIS + (59 + i) * 1000);
+            assertThat(statistics.getCount()).isEqualTo(60 - i);
+            assertThat(statistics.getSum()).isEqualTo((60 + i + 1) * (60 - i) / 2.0);
+            assertThat(statistics.getMin()).isEqualTo(i + 1);
+            assertThat(statistics.getMax()).isEqualTo(60.00);
+        }
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 119000);
+        assertThat(statistics.isEmpty()).isTrue();
+        assertThat(statistics.getSum()).isEqualTo(0.00);
+    }
+
+    @Test
+    public void checkMaxIsRecomputedWhenItsSecondExpires() {
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, TEST_AMOUNT4),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS + 1000, TEST_AMOUNT2),
+                MOCK_TIME_STAMP_IN_MILLIS + 1000);
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS + 2000, TEST_AMOUNT3),
+                MOCK_TIME_STAMP_IN_MILLIS + 2000);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 60000);
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getMin()).isEqualTo(TEST_AMOUNT2);
+        assertThat(statistics.getMax()).isEqualTo(TEST_AMOUNT3);
+    }
+
+    @Test
+    public void checkAggregatedStatisticsAreFilledIntoGivenStatistics() {
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, TEST_AMOUNT),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        Statistics statistics = new Statistics();
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS, statistics))
+                .isSameAs(statistics);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getSum()).isEqualTo(TEST_AMOUNT);
+    }
+
+    // Readers racing with writers must never see a sum which does not belong to the count it was read with.
+    @Test
+    public void checkAggregatedStatisticsAreConsistentWhileWriting() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(STRESS_THREADS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(STRESS_THREADS);
+        for (int thread = 0; thread < STRESS_THREADS; thread++) {
+            executorService.submit(() -> {
+                try {
+                    while (running.get()) {
+                        StatisticsAggregator.addTransaction(
+                                new Transaction(MOCK_TIME_STAMP_IN_MILLIS + 30000, 1.00), MOCK_TIME_STAMP_IN_MILLIS + 30000);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        for (int i = 0; i < 10000; i++) {
+            Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 30000);
+            assertThat(statistics.getSum()).isEqualTo((double) statistics.getCount());
+        }
+        running.set(false);
+        done.await();
+        executorService.shutdown();
+    }
+
+    // Once warmed up, adding transactions (including rotating the window and resetting buckets) must not create garbage.
+    @Test
+    public void checkAddingTransactionsDoesNotAllocate() {
+        Transaction[] warmUpTransactions = transactionsQuarterSecondApart(MOCK_TIME_STAMP_IN_MILLIS, 200000);
+        Transaction[] transactions = transactionsQuarterSecondApart(
+                warmUpTransactions[warmUpTransactions.length - 1].getTimestamp(), 200000);
+        addTransactionsAsTheyHappen(warmUpTransactions);
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        addTransactionsAsTheyHappen(transactions);
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+
+        assertThat(allocatedBytes).isLessThan(1024);
+    }
+
+    private Transaction[] transactionsQuarterSecondApart(long timestampInMillis, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Transaction(timestampInMillis + i * 250L, (i % 100) + 1))
+                .toArray(Transaction[]::new);
+    }
+
+    private void addTransactionsAsTheyHappen(Transaction[] transactions) {
+        for (Transaction transaction : transactions) {
+            StatisticsAggregator.addTransaction(transaction, transaction.getTimestamp());
+        }
+    }
 }
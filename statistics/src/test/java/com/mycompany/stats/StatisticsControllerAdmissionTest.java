@@ -0,0 +1,60 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"statistics.admission.enabled=true", "statistics.admission.writes.initial-limit=3",
+        "statistics.admission.writes.max-limit=3", "management.security.enabled=false"})
+@AutoConfigureMockMvc
+public class StatisticsControllerAdmissionTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setup() {
+        StatisticsAggregator.initialize(System.currentTimeMillis());
+    }
+
+    @Test
+    public void checkAdmittedRequestsAreServed() throws Exception {
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 20000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(1)));
+    }
+
+    @Test
+    public void checkLimitsArePublished() throws Exception {
+        mockMvc.perform(get("/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['statistics.admission.writes.limit']", is(3)))
+                .andExpect(jsonPath("$['statistics.admission.writes.in-flight']", is(0)))
+                .andExpect(jsonPath("$['statistics.admission.reads.limit']", is(20)));
+    }
+
+    private String convertToJson(Transaction transaction) throws JsonProcessingException {
+        return objectMapper.writeValueAsString(transaction);
+    }
+}
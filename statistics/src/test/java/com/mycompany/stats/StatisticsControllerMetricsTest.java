@@ -0,0 +1,84 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"statistics.metrics.enabled=true", "management.security.enabled=false"})
+@AutoConfigureMockMvc
+public class StatisticsControllerMetricsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StatisticsMetrics metrics;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setup() {
+        StatisticsAggregator.initialize(System.currentTimeMillis());
+    }
+
+    @Test
+    public void shouldCountAcceptedAndRejectedTransactions() throws Exception {
+        long accepted = getMetric("statistics.transactions.accepted");
+        long rejected = getMetric("statistics.transactions.rejected");
+        long ingested = getMetric("statistics.ingest.latency.count");
+
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 20000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 80000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+
+        assertThat(getMetric("statistics.transactions.accepted")).isEqualTo(accepted + 1);
+        assertThat(getMetric("statistics.transactions.rejected")).isEqualTo(rejected + 1);
+        assertThat(getMetric("statistics.ingest.latency.count")).isEqualTo(ingested + 2);
+    }
+
+    @Test
+    public void shouldPublishMetricsOnActuatorEndpoint() throws Exception {
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['statistics.compute.latency.count']", greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$['statistics.compute.latency.p99']").isNumber())
+                .andExpect(jsonPath("$['statistics.buckets.expired']").isNumber());
+    }
+
+    private long getMetric(String name) {
+        return metrics.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+
+    private String convertToJson(Transaction transaction) throws JsonProcessingException {
+        return objectMapper.writeValueAsString(transaction);
+    }
+}
@@ -0,0 +1,92 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"statistics.pipeline.enabled=true", "statistics.pipeline.wait-strategy=sleeping"})
+@AutoConfigureMockMvc
+public class StatisticsControllerPipelineTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setup() {
+        StatisticsAggregator.initialize(System.currentTimeMillis());
+    }
+
+    @Test
+    public void shouldReturn204OnPostingTransactionMoreThan60SecondsOld() throws Exception {
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 80000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    public void shouldReturn202AndEventuallyAggregateOnPostingTransactions() throws Exception {
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 20000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted());
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 30000, 300.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted());
+
+        Statistics statistics = awaitCount(2);
+        assertThat(statistics.getSum()).isEqualTo(400.00);
+        assertThat(statistics.getMin()).isEqualTo(100.00);
+        assertThat(statistics.getMax()).isEqualTo(300.00);
+    }
+
+    @Test
+    public void shouldReturn400OnPostingAmountOutOfFixedPointRange() throws Exception {
+        StatisticsAggregator.setAmounts(new FixedPointAmounts(2));
+        try {
+            mockMvc.perform(post("/api/v1/transactions")
+                    .content(convertToJson(new Transaction(System.currentTimeMillis(), 1e15)))
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isBadRequest());
+        } finally {
+            StatisticsAggregator.setAmounts(null);
+        }
+    }
+
+    private Statistics awaitCount(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis());
+        while (statistics.getCount() < count && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+            statistics = StatisticsAggregator.getAggregatedStatistics(System.currentTimeMillis());
+        }
+        assertThat(statistics.getCount()).isEqualTo(count);
+        return statistics;
+    }
+
+    private String convertToJson(Transaction transaction) {
+        try {
+            return objectMapper.writeValueAsString(transaction);
+        } catch (JsonProcessingException e) {
+            return "";
+        }
+    }
+}
@@ -11,16 +11,23 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -140,6 +147,300 @@ public class StatisticsControllerTest {
                 .andExpect(jsonPath("$.average", is(300.00)));
     }
 
+    @Test
+    public void shouldReturnAcceptedAndExpiredCountsOnPostingBatchAsJsonArray() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content("[" + convertToJson(new Transaction(now - 20000, 100.00)) + ","
+                        + convertToJson(new Transaction(now - 20000, 300.00)) + ","
+                        + convertToJson(new Transaction(now - 80000, 500.00)) + "]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted", is(2)))
+                .andExpect(jsonPath("$.expired", is(1)));
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sum", is(400.00)))
+                .andExpect(jsonPath("$.count", is(2)))
+                .andExpect(jsonPath("$.min", is(100.00)))
+                .andExpect(jsonPath("$.max", is(300.00)));
+    }
+
+    @Test
+    public void shouldReturnAcceptedCountOnPostingBatchAsNewlineDelimitedJson() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content(convertToJson(new Transaction(now - 10000, 100.00)) + "\n"
+                        + convertToJson(new Transaction(now - 30000, 200.00)) + "\n"
+                        + convertToJson(new Transaction(now - 40000, 300.00)) + "\n")
+                .contentType("application/x-ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted", is(3)))
+                .andExpect(jsonPath("$.expired", is(0)));
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sum", is(600.00)))
+                .andExpect(jsonPath("$.count", is(3)));
+    }
+
+    @Test
+    public void shouldReturn400OnPostingMalformedBatch() throws Exception {
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content("[{\"timestamp\": 1}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturn400OnPostingBatchWithTrailingContent() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content("[{\"timestamp\": " + now + ", \"amount\": 100.0}] garbage")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content("[{\"timestamp\": " + now + ", \"amount\": 100.0}] [{\"timestamp\": " + now
+                        + ", \"amount\": 100.0}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        assertThat(StatisticsAggregator.getAggregatedStatistics(now).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReturnAcceptedAndExpiredCountsOnPostingBinaryBatch() throws Exception {
+        long now = System.currentTimeMillis();
+        ByteBuffer buffer = ByteBuffer.allocate(3 * BinaryTransactionCodec.RECORD_BYTES);
+        BinaryTransactionCodec.encode(buffer, now - 20000, 100.00);
+        BinaryTransactionCodec.encode(buffer, now - 30000, 200.00);
+        BinaryTransactionCodec.encode(buffer, now - 80000, 300.00);
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content(buffer.array())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted", is(2)))
+                .andExpect(jsonPath("$.expired", is(1)));
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sum", is(300.00)))
+                .andExpect(jsonPath("$.count", is(2)));
+    }
+
+    @Test
+    public void shouldReturn400OnPostingTruncatedBinaryBatch() throws Exception {
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content(new byte[BinaryTransactionCodec.RECORD_BYTES + 4])
+                .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void checkBinaryBatchesOfTheSameThreadStartOver() throws Exception {
+        long now = System.currentTimeMillis();
+        ByteBuffer records = ByteBuffer.allocate(1000 * BinaryTransactionCodec.RECORD_BYTES + 4);
+        for (int i = 0; i < 1000; i++) {
+            BinaryTransactionCodec.encode(records, now, 1.00);
+        }
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content(records.array())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isBadRequest());
+
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryTransactionCodec.RECORD_BYTES);
+        BinaryTransactionCodec.encode(buffer, now, 100.00);
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content(buffer.array())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted", is(1)))
+                .andExpect(jsonPath("$.expired", is(0)));
+        assertThat(StatisticsAggregator.getAggregatedStatistics(now).getSum()).isEqualTo(100.00);
+    }
+
+    @Test
+    public void shouldReturnRequestedPercentiles() throws Exception {
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 20000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/statistics").param("percentiles", "50,99.9"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(1)))
+                .andExpect(jsonPath("$.percentiles['50']", is(100.00)))
+                .andExpect(jsonPath("$.percentiles['99.9']", is(100.00)));
+    }
+
+    @Test
+    public void shouldNotReturnPercentilesUnlessRequested() throws Exception {
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.percentiles").doesNotExist());
+    }
+
+    @Test
+    public void shouldReturn400OnRequestingInvalidPercentile() throws Exception {
+        mockMvc.perform(get("/api/v1/statistics").param("percentiles", "150"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnStatisticsPerKey() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(now - 20000, 100.00, "merchant.1")))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content("[{\"timestamp\":" + now + ",\"amount\":300.0,\"key\":\"merchant.1\"},"
+                        + "{\"timestamp\":" + now + ",\"amount\":50.0,\"key\":\"merchant.2\"}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/v1/statistics/merchant.1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(2)))
+                .andExpect(jsonPath("$.sum", is(400.00)));
+        mockMvc.perform(get("/api/v1/statistics/top/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].key", is("merchant.1")))
+                .andExpect(jsonPath("$[0].sum", is(400.00)))
+                .andExpect(jsonPath("$[1].key", is("merchant.2")));
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(3)));
+    }
+
+    @Test
+    public void shouldNotAddKeysOfMalformedBatch() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content("[{\"timestamp\":" + now + ",\"amount\":300.0,\"key\":\"merchant.3\"},"
+                        + "{\"timestamp\":" + now + ",\"amount\":")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/v1/statistics/merchant.3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(0)));
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(0)));
+    }
+
+    @Test
+    public void shouldReturn400OnPostingKeyOfOtherEndpoint() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(now, 100.00, "partial")))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/transactions/batch")
+                .content("[{\"timestamp\":" + now + ",\"amount\":300.0,\"key\":\"stream\"}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(0)));
+    }
+
+    @Test
+    public void shouldReturn304OnGettingUnchangedStatistics() throws Exception {
+        // Leaves the whole second for the requests, the ETag changes with the second.
+        Thread.sleep(1000 - System.currentTimeMillis() % 1000);
+        String eTag = mockMvc.perform(get("/api/v1/statistics"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", notNullValue()))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/api/v1/statistics").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 20000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/statistics").header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(1)));
+    }
+
+    @Test
+    public void shouldReturnPartialState() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(now - 20000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        byte[] partialState = mockMvc.perform(get("/api/v1/statistics/partial"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        StatisticsWindow window = StatisticsAggregator.getWindow();
+        Statistics[] statistics = new Statistics[window.getSize()];
+        Arrays.setAll(statistics, i -> new Statistics());
+        StatisticsPartialState.decode(ByteBuffer.wrap(partialState), statistics, window, null, now);
+        assertThat(statistics[window.indexOf(window.tickOf(now - 20000))].getSum()).isEqualTo(100.00);
+    }
+
+    @Test
+    public void shouldReturnStatisticsOfEveryRequestedWindow() throws Exception {
+        long now = System.currentTimeMillis();
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(now - 30000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/statistics").param("window", "10s"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(0)));
+        mockMvc.perform(get("/api/v1/statistics").param("window", "10s,60s"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.10s.count", is(0)))
+                .andExpect(jsonPath("$.60s.count", is(1)))
+                .andExpect(jsonPath("$.60s.sum", is(100.00)));
+        mockMvc.perform(get("/api/v1/statistics").param("window", "0s"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnRangeStatisticsByStep() throws Exception {
+        long from = System.currentTimeMillis() - 3600000;
+        mockMvc.perform(get("/api/v1/statistics/range")
+                .param("from", String.valueOf(from))
+                .param("to", String.valueOf(from + 3600000))
+                .param("step", "600000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(from % 600000 == 0 ? 6 : 7)))
+                .andExpect(jsonPath("$[0].timestamp", is(from - from % 600000)))
+                .andExpect(jsonPath("$[0].count", is(0)));
+    }
+
+    @Test
+    public void shouldReturn400OnRangeStepOfLessThanAMinute() throws Exception {
+        mockMvc.perform(get("/api/v1/statistics/range")
+                .param("from", "1515324420000")
+                .param("to", "1515324480000")
+                .param("step", "1000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldStreamStatisticsEverySecond() throws Exception {
+        mockMvc.perform(post("/api/v1/transactions")
+                .content(convertToJson(new Transaction(System.currentTimeMillis() - 20000, 100.00)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        MvcResult result = mockMvc.perform(get("/api/v1/statistics/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        long deadline = System.currentTimeMillis() + 3000;
+        while (!result.getResponse().getContentAsString().contains("\n\n") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(result.getResponse().getContentType()).startsWith("text/event-stream");
+        assertThat(result.getResponse().getContentAsString()).startsWith("data:{\"sum\":100.0,");
+    }
+
     private String convertToJson(Transaction transaction) {
         try {
             return objectMapper.writeValueAsString(transaction);
@@ -0,0 +1,132 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatisticsCoordinatorTest {
+
+    private final List<HttpServer> peers = new ArrayList<>();
+    private final List<String> peerUrls = new ArrayList<>();
+    private StatisticsCoordinator coordinator;
+    private long currentTimestampInMillis;
+
+    @Before
+    public void setup() throws IOException {
+        currentTimestampInMillis = System.currentTimeMillis();
+        StatisticsAggregator.initialize(currentTimestampInMillis);
+        StatisticsAggregator.addTransaction(new Transaction(currentTimestampInMillis - 10000, 100.00),
+                currentTimestampInMillis);
+        startPeer(currentTimestampInMillis - 20000, 200.00);
+        startPeer(currentTimestampInMillis - 30000, 300.00);
+        // Nothing is listening on this one.
+        try (ServerSocket socket = new ServerSocket(0)) {
+            peerUrls.add("http://localhost:" + socket.getLocalPort());
+        }
+        coordinator = new StatisticsCoordinator(peerUrls, 500, new ObjectMapper());
+    }
+
+    @After
+    public void tearDown() {
+        coordinator.stop();
+        peers.forEach(peer -> peer.stop(0));
+    }
+
+    @Test
+    public void checkStatisticsOfReachablePeersAreMerged() {
+        Statistics statistics = coordinator.getStatistics(currentTimestampInMillis);
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getSum()).isEqualTo(600.00);
+        assertThat(statistics.getMin()).isEqualTo(100.00);
+        assertThat(statistics.getMax()).isEqualTo(300.00);
+        assertThat(statistics.getAverage()).isEqualTo(200.00);
+    }
+
+    @Test
+    public void checkMergedStatisticsAreComputedOncePerSecond() throws Exception {
+        StatisticsResponseCache.Response response = coordinator.get(currentTimestampInMillis);
+        assertThat(new String(response.getBody(), "UTF-8")).contains("\"count\":3");
+        StatisticsAggregator.addTransaction(new Transaction(currentTimestampInMillis, 100.00), currentTimestampInMillis);
+
+        assertThat(coordinator.get(currentTimestampInMillis)).isSameAs(response);
+        assertThat(new String(coordinator.get(currentTimestampInMillis + 1000).getBody(), "UTF-8"))
+                .contains("\"count\":4");
+    }
+
+    @Test
+    public void checkPeersAnsweringEmptyPartialStatesAreLeftOut() throws IOException {
+        coordinator.stop();
+        peerUrls.clear();
+        startPeer(new byte[0]);
+        coordinator = new StatisticsCoordinator(peerUrls, 500, new ObjectMapper());
+
+        Statistics statistics = coordinator.getStatistics(currentTimestampInMillis);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getSum()).isEqualTo(100.00);
+    }
+
+    @Test
+    public void checkFixedPointSumsOfPeersAreMergedExactly() throws IOException {
+        coordinator.stop();
+        peerUrls.clear();
+        FixedPointAmounts amounts = new FixedPointAmounts(2);
+        StatisticsAggregator.setAmounts(amounts);
+        try {
+            StatisticsAggregator.initialize(currentTimestampInMillis);
+            for (double amount : new double[]{0.1, 0.2}) {
+                StatisticsAggregator.addTransaction(new Transaction(currentTimestampInMillis, amount),
+                        currentTimestampInMillis);
+            }
+            startPeer(partialState(currentTimestampInMillis, 0.3, amounts));
+            // Its minor units would be read as cents.
+            startPeer(partialState(currentTimestampInMillis, 0.4, null));
+            coordinator = new StatisticsCoordinator(peerUrls, 500, new ObjectMapper());
+
+            Statistics statistics = coordinator.getStatistics(currentTimestampInMillis);
+            assertThat(statistics.getCount()).isEqualTo(3);
+            assertThat(statistics.getSum()).isEqualTo(0.6);
+            assertThat(statistics.getMax()).isEqualTo(0.3);
+        } finally {
+            StatisticsAggregator.setAmounts(null);
+        }
+    }
+
+    private void startPeer(long timestamp, double amount) throws IOException {
+        startPeer(partialState(timestamp, amount, null));
+    }
+
+    // The partial state of a node holding a single transaction.
+    private byte[] partialState(long timestamp, double amount, FixedPointAmounts amounts) {
+        StatisticsWindow window = StatisticsWindow.DEFAULT;
+        Statistics[] statistics = new Statistics[window.getSize()];
+        Arrays.setAll(statistics, i -> new Statistics());
+        statistics[window.indexOf(window.tickOf(timestamp))].addStatistics(1, amount,
+                amounts != null ? amounts.toUnits(amount) : 0, amount, amount);
+        return StatisticsPartialState.encode(statistics, window, amounts, currentTimestampInMillis);
+    }
+
+    private void startPeer(byte[] partialState) throws IOException {
+        HttpServer peer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        peer.createContext(StatisticsCoordinator.PARTIAL_STATE_PATH, exchange -> {
+            exchange.sendResponseHeaders(200, partialState.length > 0 ? partialState.length : -1);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(partialState);
+            }
+        });
+        peer.start();
+        peers.add(peer);
+        peerUrls.add("http://localhost:" + peer.getAddress().getPort());
+    }
+}
@@ -0,0 +1,210 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatisticsEventLoopServerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // An aggregator of its own, the one of the JVM is left alone.
+    private final StripedStatisticsAggregator aggregator = new StripedStatisticsAggregator();
+    private StatisticsEventLoopServer server;
+    private Socket socket;
+
+    @Before
+    public void setup() throws Exception {
+        server = new StatisticsEventLoopServer(aggregator, 0, 2);
+        server.start();
+        socket = new Socket("localhost", server.getPort());
+        socket.setSoTimeout(10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        socket.close();
+        server.stop();
+    }
+
+    @Test
+    public void checkTransactionsAndStatisticsOnOneConnection() throws Exception {
+        long now = System.currentTimeMillis();
+        assertThat(exchange(post(transaction(now - 10000, 100.00))).status).isEqualTo(200);
+        assertThat(exchange(post(transaction(now - 20000, 300.00))).status).isEqualTo(200);
+        assertThat(exchange(post(transaction(now - 80000, 400.00))).status).isEqualTo(204);
+        assertThat(exchange(post("{\"timestamp\":")).status).isEqualTo(400);
+        // Larger than the buffer of the connection.
+        char[] padding = new char[40000];
+        Arrays.fill(padding, ' ');
+        assertThat(exchange(post(new String(padding) + transaction(now - 30000, 200.00))).status).isEqualTo(200);
+
+        Response response = exchange("GET /api/v1/statistics HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertThat(response.status).isEqualTo(200);
+        assertThat(response.headers.get("content-type")).isEqualTo("application/json;charset=UTF-8");
+        JsonNode statistics = objectMapper.readTree(response.body);
+        assertThat(statistics.get("sum").asDouble()).isEqualTo(600.00);
+        assertThat(statistics.get("min").asDouble()).isEqualTo(100.00);
+        assertThat(statistics.get("max").asDouble()).isEqualTo(300.00);
+        assertThat(statistics.get("count").asLong()).isEqualTo(3);
+        assertThat(statistics.get("average").asDouble()).isEqualTo(200.00);
+        assertThat(aggregator.getAggregatedStatistics(now).getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void checkPipelinedAndSplitRequests() throws Exception {
+        long now = System.currentTimeMillis();
+        String requests = post(transaction(now, 100.00)) + post(transaction(now, 200.00))
+                + "GET /api/v1/statistics HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        OutputStream out = socket.getOutputStream();
+        byte[] bytes = requests.getBytes(StandardCharsets.UTF_8);
+        // Headers and bodies arriving in pieces.
+        for (int i = 0; i < bytes.length; i += 7) {
+            out.write(bytes, i, Math.min(7, bytes.length - i));
+            out.flush();
+            Thread.sleep(1);
+        }
+        InputStream in = socket.getInputStream();
+        assertThat(read(in).status).isEqualTo(200);
+        assertThat(read(in).status).isEqualTo(200);
+        Response response = read(in);
+        assertThat(objectMapper.readTree(response.body).get("count").asLong()).isEqualTo(2);
+    }
+
+    @Test
+    public void checkClientNotReadingItsResponsesIsPushedBack() throws Exception {
+        byte[] requests = new String(new char[1000]).replace("\0", "GET /api/v1/statistics HTTP/1.1\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        try (Socket client = new Socket()) {
+            client.setReceiveBufferSize(16 * 1024);
+            client.connect(new InetSocketAddress("localhost", server.getPort()));
+            AtomicLong written = new AtomicLong();
+            Thread writer = new Thread(() -> {
+                try {
+                    OutputStream out = client.getOutputStream();
+                    for (int i = 0; i < 1000; i++) {
+                        out.write(requests);
+                        written.addAndGet(requests.length);
+                    }
+                } catch (IOException e) {
+                    // Closed by the test.
+                }
+            });
+            writer.setDaemon(true);
+            writer.start();
+            // The server stops reading once the responses pile up, until the socket buffers are full.
+            long stalled = -1;
+            while (written.get() != stalled) {
+                stalled = written.get();
+                Thread.sleep(500);
+            }
+            assertThat(writer.isAlive()).isTrue();
+            assertThat(stalled).isLessThan(1000L * requests.length);
+
+            // Reading the responses lets the server read again.
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            for (long deadline = System.currentTimeMillis() + 10000;
+                 written.get() == stalled && System.currentTimeMillis() < deadline; ) {
+                for (int i = 0; i < 1000; i++) {
+                    assertThat(read(in).status).isEqualTo(200);
+                }
+            }
+            assertThat(written.get()).isGreaterThan(stalled);
+        }
+    }
+
+    @Test
+    public void checkETagAnswersNotModified() throws Exception {
+        // Leaves the whole second for the requests, the ETag changes with the second.
+        Thread.sleep(1000 - System.currentTimeMillis() % 1000);
+        Response response = exchange("GET /api/v1/statistics HTTP/1.1\r\n\r\n");
+        String eTag = response.headers.get("etag");
+        assertThat(eTag).isNotNull();
+        assertThat(exchange("GET /api/v1/statistics HTTP/1.1\r\nIf-None-Match: " + eTag + "\r\n\r\n").status)
+                .isEqualTo(304);
+        exchange(post(transaction(System.currentTimeMillis(), 100.00)));
+        assertThat(exchange("GET /api/v1/statistics HTTP/1.1\r\nIf-None-Match: " + eTag + "\r\n\r\n").status)
+                .isEqualTo(200);
+    }
+
+    @Test
+    public void checkOtherRequests() throws Exception {
+        assertThat(exchange("GET /api/v1/statistics/EUR HTTP/1.1\r\n\r\n").status).isEqualTo(404);
+        assertThat(exchange("GET /api/v1/statistics?window=10s HTTP/1.1\r\n\r\n").status).isEqualTo(400);
+        Response response = exchange("GET /api/v1/transactions HTTP/1.1\r\n\r\n");
+        assertThat(response.status).isEqualTo(405);
+        assertThat(response.headers.get("allow")).isEqualTo("POST");
+        response = exchange("POST /api/v1/transactions HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+        assertThat(response.status).isEqualTo(411);
+        assertThat(response.headers.get("connection")).isEqualTo("close");
+        assertThat(socket.getInputStream().read()).isEqualTo(-1);
+    }
+
+    private static String post(String body) {
+        return "POST /api/v1/transactions HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                + "Content-Length: " + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body;
+    }
+
+    private static String transaction(long timestamp, double amount) {
+        return "{\"timestamp\":" + timestamp + ",\"amount\":" + amount + "}";
+    }
+
+    private Response exchange(String request) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(request.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return read(socket.getInputStream());
+    }
+
+    private static Response read(InputStream in) throws IOException {
+        Response response = new Response();
+        String statusLine = readLine(in);
+        response.status = Integer.parseInt(statusLine.split(" ")[1]);
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            int separator = line.indexOf(':');
+            response.headers.put(line.substring(0, separator).toLowerCase(), line.substring(separator + 1).trim());
+        }
+        int length = Integer.parseInt(response.headers.getOrDefault("content-length", "0"));
+        byte[] body = new byte[length];
+        for (int read = 0; read < length; ) {
+            read += in.read(body, read, length - read);
+        }
+        response.body = new String(body, StandardCharsets.UTF_8);
+        return response;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static final class Response {
+        private int status;
+        private final Map<String, String> headers = new HashMap<>();
+        private String body;
+    }
+}
@@ -0,0 +1,216 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatisticsHttpServerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private StatisticsHttpServer server;
+
+    @Before
+    public void setup() throws Exception {
+        StatisticsAggregator.initialize(System.currentTimeMillis());
+        server = new StatisticsHttpServer(0, 2, 1024);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void checkTransactionsAndStatistics() throws Exception {
+        long now = System.currentTimeMillis();
+        assertThat(post("/transactions", transaction(now - 10000, 100.00), null).status).isEqualTo(200);
+        assertThat(post("/transactions", transaction(now - 20000, 300.00), null).status).isEqualTo(200);
+        assertThat(post("/transactions", transaction(now - 80000, 400.00), null).status).isEqualTo(204);
+        assertThat(post("/transactions", "{\"timestamp\":", null).status).isEqualTo(400);
+
+        Response response = get("/statistics", null);
+        assertThat(response.status).isEqualTo(200);
+        assertThat(response.contentType).isEqualTo("application/json;charset=UTF-8");
+        JsonNode statistics = objectMapper.readTree(response.body);
+        assertThat(statistics.get("sum").asDouble()).isEqualTo(400.00);
+        assertThat(statistics.get("min").asDouble()).isEqualTo(100.00);
+        assertThat(statistics.get("max").asDouble()).isEqualTo(300.00);
+        assertThat(statistics.get("count").asLong()).isEqualTo(2);
+        assertThat(statistics.get("average").asDouble()).isEqualTo(200.00);
+        assertThat(statistics.has("percentiles")).isFalse();
+    }
+
+    @Test
+    public void checkETagAnswersNotModified() throws Exception {
+        // Leaves the whole second for the requests, the ETag changes with the second.
+        Thread.sleep(1000 - System.currentTimeMillis() % 1000);
+        Response response = get("/statistics", null);
+        assertThat(response.eTag).isNotNull();
+        assertThat(get("/statistics", response.eTag).status).isEqualTo(304);
+        post("/transactions", transaction(System.currentTimeMillis(), 100.00), null);
+        assertThat(get("/statistics", response.eTag).status).isEqualTo(200);
+    }
+
+    @Test
+    public void checkPercentilesAndWindows() throws Exception {
+        long now = System.currentTimeMillis();
+        post("/transactions", transaction(now, 100.00), null);
+        post("/transactions", transaction(now - 30000, 200.00), null);
+
+        JsonNode statistics = objectMapper.readTree(get("/statistics?percentiles=50,99.9", null).body);
+        assertThat(statistics.get("count").asLong()).isEqualTo(2);
+        assertThat(statistics.get("percentiles").has("99.9")).isTrue();
+
+        JsonNode windows = objectMapper.readTree(get("/statistics?window=10s&window=60s", null).body);
+        assertThat(windows.get("10s").get("count").asLong()).isEqualTo(1);
+        assertThat(windows.get("60s").get("count").asLong()).isEqualTo(2);
+        assertThat(get("/statistics?window=abc", null).status).isEqualTo(400);
+    }
+
+    @Test
+    public void checkBatchesAndKeys() throws Exception {
+        long now = System.currentTimeMillis();
+        Response response = post("/transactions/batch", "[" + transaction(now, 100.00) + ","
+                + "{\"timestamp\":" + now + ",\"amount\":50.0,\"key\":\"EUR\"},"
+                + transaction(now - 80000, 400.00) + "]", null);
+        assertThat(objectMapper.readTree(response.body).get("accepted").asLong()).isEqualTo(2);
+        assertThat(objectMapper.readTree(response.body).get("expired").asLong()).isEqualTo(1);
+
+        ByteBuffer records = ByteBuffer.allocate(2 * BinaryTransactionCodec.RECORD_BYTES);
+        BinaryTransactionCodec.encode(records, now, 200.00);
+        BinaryTransactionCodec.encode(records, now - 80000, 400.00);
+        response = post("/transactions/batch", records.array(), "application/octet-stream");
+        assertThat(objectMapper.readTree(response.body).get("accepted").asLong()).isEqualTo(1);
+        assertThat(post("/transactions/batch", new byte[3], "application/octet-stream").status).isEqualTo(400);
+
+        assertThat(objectMapper.readTree(get("/statistics", null).body).get("sum").asDouble()).isEqualTo(350.00);
+        assertThat(objectMapper.readTree(get("/statistics/EUR", null).body).get("sum").asDouble()).isEqualTo(50.00);
+        JsonNode top = objectMapper.readTree(get("/statistics/top/5", null).body);
+        assertThat(top.size()).isEqualTo(1);
+        assertThat(top.get(0).get("key").asText()).isEqualTo("EUR");
+        assertThat(get("/statistics/top/x", null).status).isEqualTo(400);
+    }
+
+    @Test
+    public void shouldNotAddKeysOfMalformedBatch() throws Exception {
+        long now = System.currentTimeMillis();
+        assertThat(post("/transactions/batch", "[{\"timestamp\":" + now + ",\"amount\":50.0,\"key\":\"GBP\"},"
+                + "{\"timestamp\":" + now + "}]", null).status).isEqualTo(400);
+
+        assertThat(objectMapper.readTree(get("/statistics/GBP", null).body).get("count").asLong()).isEqualTo(0);
+        assertThat(objectMapper.readTree(get("/statistics", null).body).get("count").asLong()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectKeysOfOtherEndpoints() throws Exception {
+        long now = System.currentTimeMillis();
+        assertThat(post("/transactions", "{\"timestamp\":" + now + ",\"amount\":50.0,\"key\":\"partial\"}", null)
+                .status).isEqualTo(400);
+        assertThat(post("/transactions/batch", "[{\"timestamp\":" + now + ",\"amount\":50.0,\"key\":\"range\"}]",
+                null).status).isEqualTo(400);
+
+        assertThat(objectMapper.readTree(get("/statistics", null).body).get("count").asLong()).isEqualTo(0);
+    }
+
+    @Test
+    public void checkPartialStateAndRange() throws Exception {
+        long now = System.currentTimeMillis();
+        post("/transactions", transaction(now, 100.00), null);
+
+        Response response = get("/statistics/partial", null);
+        assertThat(response.contentType).isEqualTo("application/octet-stream");
+        Statistics[] statistics = new Statistics[StatisticsWindow.DEFAULT.getSize()];
+        Arrays.setAll(statistics, i -> new Statistics());
+        StatisticsPartialState.decode(ByteBuffer.wrap(response.body), statistics, StatisticsWindow.DEFAULT, null,
+                now);
+        assertThat(Arrays.stream(statistics).mapToDouble(Statistics::getSum).sum()).isEqualTo(100.00);
+
+        long minute = now - now % 60000;
+        response = get("/statistics/range?from=" + (minute - 120000) + "&to=" + minute + "&step=60000", null);
+        assertThat(objectMapper.readTree(response.body).size()).isEqualTo(2);
+        assertThat(get("/statistics/range?from=0&to=1", null).status).isEqualTo(400);
+        assertThat(get("/statistics/range?from=0&to=1&step=1000", null).status).isEqualTo(400);
+    }
+
+    @Test
+    public void checkUnknownPathsAndMethods() throws Exception {
+        assertThat(get("/unknown", null).status).isEqualTo(404);
+        assertThat(get("/statistics/stream", null).status).isEqualTo(404);
+        assertThat(get("/statistics/a/b", null).status).isEqualTo(404);
+        Response response = get("/transactions", null);
+        assertThat(response.status).isEqualTo(405);
+        assertThat(response.allow).isEqualTo("POST");
+        assertThat(post("/statistics", "{}", null).status).isEqualTo(405);
+    }
+
+    private static String transaction(long timestamp, double amount) {
+        return "{\"timestamp\":" + timestamp + ",\"amount\":" + amount + "}";
+    }
+
+    private Response get(String path, String eTag) throws IOException {
+        HttpURLConnection connection = connect(path);
+        if (eTag != null) {
+            connection.setRequestProperty("If-None-Match", eTag);
+        }
+        return new Response(connection);
+    }
+
+    private Response post(String path, String body, String contentType) throws IOException {
+        return post(path, body.getBytes(StandardCharsets.UTF_8),
+                contentType != null ? contentType : "application/json");
+    }
+
+    private Response post(String path, byte[] body, String contentType) throws IOException {
+        HttpURLConnection connection = connect(path);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setDoOutput(true);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(body);
+        }
+        return new Response(connection);
+    }
+
+    private HttpURLConnection connect(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/api/v1" + path).openConnection();
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String contentType;
+        private final String eTag;
+        private final String allow;
+        private final byte[] body;
+
+        private Response(HttpURLConnection connection) throws IOException {
+            status = connection.getResponseCode();
+            contentType = connection.getContentType();
+            eTag = connection.getHeaderField("ETag");
+            allow = connection.getHeaderField("Allow");
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                int read;
+                byte[] buffer = new byte[4096];
+                while (inputStream != null && (read = inputStream.read(buffer)) >= 0) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            this.body = body.toByteArray();
+        }
+    }
+}
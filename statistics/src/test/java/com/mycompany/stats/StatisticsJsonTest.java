@@ -0,0 +1,128 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StatisticsJsonTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void checkStatisticsAreWrittenLikeJackson() throws Exception {
+        Statistics empty = new Statistics();
+        assertThat(StatisticsJson.write(empty)).isEqualTo(objectMapper.writeValueAsString(empty));
+
+        Statistics statistics = statistics(3, 600.25, 0.1, 1e12);
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        percentiles.put("50.0", 200.5);
+        percentiles.put("99.9", Double.NaN);
+        statistics.setPercentiles(percentiles);
+        assertThat(StatisticsJson.write(statistics)).isEqualTo(objectMapper.writeValueAsString(statistics));
+
+        Map<String, Statistics> windows = new LinkedHashMap<>();
+        windows.put("1s", empty);
+        windows.put("500ms", statistics);
+        assertThat(StatisticsJson.write(windows)).isEqualTo(objectMapper.writeValueAsString(windows));
+    }
+
+    @Test
+    public void checkListsAndResultsAreWrittenLikeJackson() throws Exception {
+        List<KeyedStatistics> keys = Arrays.asList(
+                new KeyedStatistics("EUR", statistics(2, 300.00, 100.00, 200.00)),
+                new KeyedStatistics("a \"quoted\"\\ key\n\u0001", statistics(1, 5.5, 5.5, 5.5)));
+        assertThat(StatisticsJson.writeKeyed(keys)).isEqualTo(objectMapper.writeValueAsString(keys));
+        assertThat(StatisticsJson.writeKeyed(Collections.emptyList())).isEqualTo("[]");
+
+        List<TimestampedStatistics> points = Arrays.asList(
+                new TimestampedStatistics(MOCK_TIME_STAMP_IN_MILLIS, statistics(1, 100.00, 100.00, 100.00)),
+                new TimestampedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 60000, new Statistics()));
+        assertThat(StatisticsJson.writeTimestamped(points)).isEqualTo(objectMapper.writeValueAsString(points));
+
+        TransactionBatchResult result = new TransactionBatchResult(3, 1);
+        assertThat(StatisticsJson.write(result)).isEqualTo(objectMapper.writeValueAsString(result));
+    }
+
+    @Test
+    public void checkTransactionIsReadLikeJackson() {
+        assertThat(StatisticsJson.readTransaction(
+                " {\"amount\": 12.3, \"extra\": {\"nested\": [1, \"x\", null, true]}, \"timestamp\": 1478192204000 } "))
+                .isEqualTo(new Transaction(1478192204000L, 12.3));
+        assertThat(StatisticsJson.readTransaction("{\"timestamp\":\"1478192204000\",\"amount\":-1E2,"
+                + "\"key\":\"caf\\u00e9\\n\"}"))
+                .isEqualTo(new Transaction(1478192204000L, -100.0, "café\n"));
+        assertThat(StatisticsJson.readTransaction("{\"timestamp\":null}")).isEqualTo(new Transaction(0, 0.0));
+        assertThat(StatisticsJson.readTransaction("{}")).isEqualTo(new Transaction(0, 0.0));
+    }
+
+    @Test
+    public void shouldRejectMalformedTransactions() {
+        for (String json : new String[]{"", "[]", "{", "{\"timestamp\":}", "{\"timestamp\":1,}", "{\"amount\":abc}",
+                "{\"timestamp\":1}{", "{\"key\":\"unterminated}"}) {
+            assertThatThrownBy(() -> StatisticsJson.readTransaction(json)).as(json)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void checkBatchIsReadFromArrayOrNewlineDelimitedJson() throws Exception {
+        StatisticsAggregator.initialize(MOCK_TIME_STAMP_IN_MILLIS);
+        KeyedStatisticsAggregator keyed = new KeyedStatisticsAggregator(StatisticsWindow.DEFAULT, 16);
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS);
+        readTransactions("[{\"timestamp\":" + MOCK_TIME_STAMP_IN_MILLIS + ",\"amount\":100.0,"
+                + "\"key\":\"EUR\"}, {\"timestamp\":" + (MOCK_TIME_STAMP_IN_MILLIS - 80000) + ",\"amount\":200.0}]",
+                batch);
+        readTransactions("{\"timestamp\":" + MOCK_TIME_STAMP_IN_MILLIS + ",\"amount\":300.0}\n"
+                + "{\"timestamp\":" + MOCK_TIME_STAMP_IN_MILLIS + ",\"amount\":400.0}\n", batch);
+        readTransactions("[]", batch);
+        readTransactions("", batch);
+
+        assertThat(batch.getTransactions()).isEqualTo(4);
+        assertThat(StatisticsAggregator.addTransactions(batch)).isEqualTo(3);
+        batch.addKeyedTransactionsTo(keyed, MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).getSum()).isEqualTo(800.0);
+        assertThat(keyed.getStatistics("EUR", MOCK_TIME_STAMP_IN_MILLIS).getSum()).isEqualTo(100.0);
+
+        assertThatThrownBy(() -> readTransactions("[{\"timestamp\":1}]", batch))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> readTransactions("[{\"timestamp\":1,\"amount\":1}", batch))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void checkBatchIsStreamedAcrossTheBuffer() throws Exception {
+        StatisticsAggregator.initialize(MOCK_TIME_STAMP_IN_MILLIS);
+        KeyedStatisticsAggregator keyed = new KeyedStatisticsAggregator(StatisticsWindow.DEFAULT, 16);
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i > 0 ? "," : "").append("{\"timestamp\":").append(MOCK_TIME_STAMP_IN_MILLIS)
+                    .append(",\"amount\":1.0,\"key\":\"merchant-\\u00e9").append(i % 2).append("\"}");
+        }
+        readTransactions(json.append(']').toString(), batch);
+
+        assertThat(StatisticsAggregator.addTransactions(batch)).isEqualTo(1000);
+        batch.addKeyedTransactionsTo(keyed, MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(keyed.getStatistics("merchant-\u00e91", MOCK_TIME_STAMP_IN_MILLIS).getCount()).isEqualTo(500);
+    }
+
+    private static void readTransactions(String json, TransactionBatch batch) throws IOException {
+        StatisticsJson.readTransactions(new StringReader(json), batch);
+    }
+
+    private static Statistics statistics(long count, double sum, double min, double max) {
+        return new Statistics().addStatistics(count, sum, min, max);
+    }
+}
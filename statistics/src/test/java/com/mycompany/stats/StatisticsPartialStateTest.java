@@ -0,0 +1,105 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StatisticsPartialStateTest {
+
+    private static final StatisticsWindow WINDOW = StatisticsWindow.DEFAULT;
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    @Test
+    public void checkPartialStatesAreMergedByBucket() {
+        Statistics[] node = emptyWindow(WINDOW);
+        node[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS - 59000)].addStatistics(1, 100.00, 100.00, 100.00);
+        node[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)].addStatistics(2, 300.00, 100.00, 200.00);
+        byte[] partialState = StatisticsPartialState.encode(node, WINDOW, null, MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(partialState).hasSize(StatisticsPartialState.HEADER_BYTES + 2 * StatisticsPartialState.RECORD_BYTES);
+
+        Statistics[] coordinator = emptyWindow(WINDOW);
+        coordinator[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)].addStatistics(1, 400.00, 400.00, 400.00);
+        StatisticsPartialState.decode(ByteBuffer.wrap(partialState), coordinator, WINDOW, null,
+                MOCK_TIME_STAMP_IN_MILLIS);
+
+        Statistics current = coordinator[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)];
+        assertThat(current.getCount()).isEqualTo(3);
+        assertThat(current.getSum()).isEqualTo(700.00);
+        assertThat(current.getMin()).isEqualTo(100.00);
+        assertThat(current.getMax()).isEqualTo(400.00);
+        assertThat(coordinator[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS - 59000)].getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void checkBucketsOutOfTheCoordinatorWindowAreLeftOut() {
+        Statistics[] node = emptyWindow(WINDOW);
+        node[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS - 59000)].addStatistics(1, 100.00, 100.00, 100.00);
+        byte[] partialState = StatisticsPartialState.encode(node, WINDOW, null, MOCK_TIME_STAMP_IN_MILLIS);
+
+        Statistics[] coordinator = emptyWindow(WINDOW);
+        StatisticsPartialState.decode(ByteBuffer.wrap(partialState), coordinator, WINDOW, null,
+                MOCK_TIME_STAMP_IN_MILLIS + 1000);
+        assertThat(Arrays.stream(coordinator).allMatch(Statistics::isEmpty)).isTrue();
+    }
+
+    @Test
+    public void checkFinerBucketsAreMergedIntoCoarserOnes() {
+        StatisticsWindow fine = new StatisticsWindow(100, 600);
+        Statistics[] node = emptyWindow(fine);
+        node[indexOf(fine, MOCK_TIME_STAMP_IN_MILLIS + 100)].addStatistics(1, 100.00, 100.00, 100.00);
+        node[indexOf(fine, MOCK_TIME_STAMP_IN_MILLIS + 900)].addStatistics(1, 200.00, 200.00, 200.00);
+        byte[] partialState = StatisticsPartialState.encode(node, fine, null, MOCK_TIME_STAMP_IN_MILLIS + 900);
+
+        Statistics[] coordinator = emptyWindow(WINDOW);
+        StatisticsPartialState.decode(ByteBuffer.wrap(partialState), coordinator, WINDOW, null,
+                MOCK_TIME_STAMP_IN_MILLIS + 900);
+        assertThat(coordinator[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)].getSum()).isEqualTo(300.00);
+    }
+
+    @Test
+    public void shouldRejectTruncatedPartialState() {
+        Statistics[] node = emptyWindow(WINDOW);
+        node[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)].addStatistics(1, 100.00, 100.00, 100.00);
+        byte[] partialState = StatisticsPartialState.encode(node, WINDOW, null, MOCK_TIME_STAMP_IN_MILLIS);
+
+        assertThatThrownBy(() -> StatisticsPartialState.decode(
+                ByteBuffer.wrap(partialState, 0, partialState.length - 1), emptyWindow(WINDOW), WINDOW, null,
+                MOCK_TIME_STAMP_IN_MILLIS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void checkMinorUnitsAreMergedBetweenNodesOfTheSameScale() {
+        FixedPointAmounts amounts = new FixedPointAmounts(2);
+        Statistics[] node = emptyWindow(WINDOW);
+        node[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)].addStatistics(1, 0.1, 10, 0.1, 0.1);
+        byte[] partialState = StatisticsPartialState.encode(node, WINDOW, amounts, MOCK_TIME_STAMP_IN_MILLIS);
+
+        Statistics[] coordinator = emptyWindow(WINDOW);
+        coordinator[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)].addStatistics(1, 0.2, 20, 0.2, 0.2);
+        StatisticsPartialState.decode(ByteBuffer.wrap(partialState), coordinator, WINDOW, amounts,
+                MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(coordinator[indexOf(WINDOW, MOCK_TIME_STAMP_IN_MILLIS)].getSumInUnits()).isEqualTo(30);
+
+        assertThatThrownBy(() -> StatisticsPartialState.decode(ByteBuffer.wrap(partialState), emptyWindow(WINDOW),
+                WINDOW, new FixedPointAmounts(3), MOCK_TIME_STAMP_IN_MILLIS))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StatisticsPartialState.decode(ByteBuffer.wrap(partialState), emptyWindow(WINDOW),
+                WINDOW, null, MOCK_TIME_STAMP_IN_MILLIS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int indexOf(StatisticsWindow window, long timestampInMillis) {
+        return window.indexOf(window.tickOf(timestampInMillis));
+    }
+
+    private static Statistics[] emptyWindow(StatisticsWindow window) {
+        Statistics[] statistics = new Statistics[window.getSize()];
+        Arrays.setAll(statistics, i -> new Statistics());
+        return statistics;
+    }
+}
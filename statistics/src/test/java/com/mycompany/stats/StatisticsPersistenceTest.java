@@ -0,0 +1,141 @@
+package com.mycompany.stats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatisticsPersistenceTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private StatisticsPersistence persistence;
+
+    @Before
+    public void setup() throws IOException {
+        file = folder.getRoot().toPath().resolve("buckets");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        persistence.stop();
+        StatisticsAggregator.setAmounts(null);
+        StatisticsAggregator.initialize(MOCK_TIME_STAMP_IN_MILLIS);
+    }
+
+    private void restart(long currentTimestampInMillis) throws IOException {
+        restart(currentTimestampInMillis, null);
+    }
+
+    private void restart(long currentTimestampInMillis, FixedPointAmounts amounts) throws IOException {
+        if (persistence != null) {
+            persistence.stop();
+        }
+        StatisticsAggregator.setAmounts(amounts);
+        persistence = new StatisticsPersistence(file, StatisticsWindow.DEFAULT, amounts, 0);
+        persistence.start(currentTimestampInMillis);
+    }
+
+    @Test
+    public void checkStatisticsAreRestoredAfterRestart() throws IOException {
+        restart(MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS - 50000, 100.00),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS - 10000, 300.00),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsAggregator.initialize(MOCK_TIME_STAMP_IN_MILLIS);
+
+        restart(MOCK_TIME_STAMP_IN_MILLIS + 5000);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 5000,
+                new double[]{100});
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getSum()).isEqualTo(400.00);
+        assertThat(statistics.getMin()).isEqualTo(100.00);
+        assertThat(statistics.getMax()).isEqualTo(300.00);
+        assertThat(statistics.getPercentiles().get("100")).isEqualTo(300.00);
+
+        // The oldest transaction expires as usual.
+        statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 15000);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getMin()).isEqualTo(300.00);
+    }
+
+    @Test
+    public void checkStaleBucketsAreDroppedOnRestart() throws IOException {
+        restart(MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS - 10000, 100.00),
+                MOCK_TIME_STAMP_IN_MILLIS);
+
+        restart(MOCK_TIME_STAMP_IN_MILLIS + 60000);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 60000).isEmpty()).isTrue();
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS + 50000, 200.00),
+                MOCK_TIME_STAMP_IN_MILLIS + 60000);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS + 60000).getSum())
+                .isEqualTo(200.00);
+    }
+
+    @Test
+    public void checkBucketsOfAnotherNumberOfStripesAreRestored() throws IOException {
+        int stripes = StatisticsAggregator.getStripes() + 1;
+        StatisticsWindow window = StatisticsWindow.DEFAULT;
+        ByteBuffer region = ByteBuffer.allocate(stripes * window.getStripeBytes());
+        for (ByteBuffer slice : StatisticsAggregator.slice(region, stripes, window)) {
+            StatisticsStripe stripe = new StatisticsStripe(slice, window, new StatisticsRollups(), 0,
+                    MOCK_TIME_STAMP_IN_MILLIS / 1000);
+            stripe.addAmount(MOCK_TIME_STAMP_IN_MILLIS / 1000 - 10, 100.00, 0, MOCK_TIME_STAMP_IN_MILLIS / 1000);
+        }
+        ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+        header.putInt(0x53544154).putInt((int) window.getBucketMillis()).putInt(window.getBuckets())
+                .putInt(StatisticsBuckets.BYTES_PER_BUCKET).putInt(stripes).putInt(0).position(64);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(new ByteBuffer[]{header, region});
+        }
+
+        restart(MOCK_TIME_STAMP_IN_MILLIS);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(statistics.getCount()).isEqualTo(stripes);
+        assertThat(statistics.getSum()).isEqualTo(stripes * 100.00);
+    }
+
+    @Test
+    public void checkFileOfAnotherScaleIsStartedOver() throws IOException {
+        restart(MOCK_TIME_STAMP_IN_MILLIS, new FixedPointAmounts(2));
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 100.25),
+                MOCK_TIME_STAMP_IN_MILLIS);
+
+        restart(MOCK_TIME_STAMP_IN_MILLIS, new FixedPointAmounts(2));
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).getSum()).isEqualTo(100.25);
+        restart(MOCK_TIME_STAMP_IN_MILLIS, new FixedPointAmounts(4));
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).isEmpty()).isTrue();
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 100.25),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        restart(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void checkFileOfAnotherLayoutIsStartedOver() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+        }
+        restart(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).isEmpty()).isTrue();
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 100.00), MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(MOCK_TIME_STAMP_IN_MILLIS).getCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,71 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatisticsResponseCacheTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    private final StatisticsResponseCache cache = new StatisticsResponseCache(new ObjectMapper());
+
+    @Before
+    public void setup() {
+        StatisticsAggregator.initialize(MOCK_TIME_STAMP_IN_MILLIS);
+    }
+
+    @Test
+    public void checkResponseIsReusedWithinSecondAndVersion() throws Exception {
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 100.00), MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsResponseCache.Response response = cache.get(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).contains("\"count\":1");
+
+        assertThat(cache.get(MOCK_TIME_STAMP_IN_MILLIS + 999)).isSameAs(response);
+    }
+
+    @Test
+    public void checkResponseChangesWithVersion() throws Exception {
+        StatisticsResponseCache.Response response = cache.get(MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 100.00), MOCK_TIME_STAMP_IN_MILLIS);
+
+        StatisticsResponseCache.Response newResponse = cache.get(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(newResponse.getETag()).isNotEqualTo(response.getETag());
+        assertThat(new String(newResponse.getBody(), StandardCharsets.UTF_8)).contains("\"count\":1");
+    }
+
+    @Test
+    public void checkResponseChangesWithSecond() throws Exception {
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS - 59000, 100.00),
+                MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsResponseCache.Response response = cache.get(MOCK_TIME_STAMP_IN_MILLIS);
+
+        StatisticsResponseCache.Response newResponse = cache.get(MOCK_TIME_STAMP_IN_MILLIS + 1000);
+        assertThat(newResponse.getETag()).isNotEqualTo(response.getETag());
+        assertThat(new String(newResponse.getBody(), StandardCharsets.UTF_8)).contains("\"count\":0");
+    }
+
+    @Test
+    public void checkOlderResponseDoesNotReplaceNewerOne() throws Exception {
+        StatisticsResponseCache.Response response = cache.get(MOCK_TIME_STAMP_IN_MILLIS + 1000);
+
+        StatisticsResponseCache.Response olderResponse = cache.get(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(olderResponse.getTick()).isLessThan(response.getTick());
+        assertThat(cache.get(MOCK_TIME_STAMP_IN_MILLIS + 1000)).isSameAs(response);
+    }
+
+    @Test
+    public void checkVersionIsNotReusedAfterInitialize() throws Exception {
+        StatisticsAggregator.addTransaction(new Transaction(MOCK_TIME_STAMP_IN_MILLIS, 100.00), MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsResponseCache.Response response = cache.get(MOCK_TIME_STAMP_IN_MILLIS);
+
+        StatisticsAggregator.initialize(MOCK_TIME_STAMP_IN_MILLIS);
+        StatisticsResponseCache.Response newResponse = cache.get(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(newResponse.getVersion()).isGreaterThan(response.getVersion());
+        assertThat(new String(newResponse.getBody(), StandardCharsets.UTF_8)).contains("\"count\":0");
+    }
+}
@@ -0,0 +1,88 @@
+package com.mycompany.stats;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StatisticsRollupsTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+    private static final long MINUTE_START_IN_MILLIS = 1515324420000L;
+    private static final long HOUR_START_IN_MILLIS = 1515322800000L;
+
+    @Before
+    public void setup() {
+        StatisticsAggregator.initialize(MOCK_TIME_STAMP_IN_MILLIS);
+        add(MOCK_TIME_STAMP_IN_MILLIS - 10000, 100.00);
+        add(MOCK_TIME_STAMP_IN_MILLIS, 200.00);
+        add(MOCK_TIME_STAMP_IN_MILLIS + 40000, 300.00);
+    }
+
+    @Test
+    public void checkExpiredSecondsAreRolledUpByMinute() {
+        List<TimestampedStatistics> points = StatisticsAggregator.getRange(MINUTE_START_IN_MILLIS + 5000,
+                MINUTE_START_IN_MILLIS + 120000, 60000, null, MOCK_TIME_STAMP_IN_MILLIS + 200000);
+
+        assertThat(points).extracting(TimestampedStatistics::getTimestamp)
+                .containsExactly(MINUTE_START_IN_MILLIS, MINUTE_START_IN_MILLIS + 60000);
+        Statistics first = points.get(0).getStatistics();
+        assertThat(first.getCount()).isEqualTo(2);
+        assertThat(first.getSum()).isEqualTo(300.00);
+        assertThat(first.getMin()).isEqualTo(100.00);
+        assertThat(first.getMax()).isEqualTo(200.00);
+        assertThat(points.get(1).getStatistics().getSum()).isEqualTo(300.00);
+    }
+
+    @Test
+    public void checkExpiredSecondsAreRolledUpByHour() {
+        List<TimestampedStatistics> points = StatisticsAggregator.getRange(HOUR_START_IN_MILLIS,
+                HOUR_START_IN_MILLIS + 7200000, 3600000, new double[]{50}, MOCK_TIME_STAMP_IN_MILLIS + 200000);
+
+        assertThat(points).hasSize(2);
+        Statistics hour = points.get(0).getStatistics();
+        assertThat(hour.getCount()).isEqualTo(3);
+        assertThat(hour.getSum()).isEqualTo(600.00);
+        assertThat(hour.getPercentiles().get("50")).isBetween(198.00, 202.00);
+        assertThat(points.get(1).getStatistics().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void checkSecondsInsideTheWindowAreNotRolledUpYet() {
+        List<TimestampedStatistics> points = StatisticsAggregator.getRange(MINUTE_START_IN_MILLIS,
+                MINUTE_START_IN_MILLIS + 120000, 60000, null, MOCK_TIME_STAMP_IN_MILLIS + 70000);
+
+        assertThat(points.get(0).getStatistics().getSum()).isEqualTo(300.00);
+        assertThat(points.get(1).getStatistics().isEmpty()).isTrue();
+    }
+
+    @Test(timeout = 5000)
+    public void checkStepOfManyYearsOnlyReadsTheRetention() {
+        long step = 60000000000000L;
+        List<TimestampedStatistics> points = StatisticsAggregator.getRange(0, step, step, null,
+                MOCK_TIME_STAMP_IN_MILLIS + 200000);
+
+        assertThat(points).hasSize(1);
+        assertThat(points.get(0).getStatistics().getSum()).isEqualTo(600.00);
+        assertThat(StatisticsAggregator.getRange(0, Long.MAX_VALUE, Long.MAX_VALUE / 60000 * 60000, null,
+                MOCK_TIME_STAMP_IN_MILLIS + 200000)).hasSize(2);
+    }
+
+    @Test
+    public void shouldRejectInvalidRanges() {
+        assertThatThrownBy(() -> StatisticsAggregator.getRange(MINUTE_START_IN_MILLIS, MINUTE_START_IN_MILLIS + 60000,
+                1000, null, MOCK_TIME_STAMP_IN_MILLIS)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StatisticsAggregator.getRange(MINUTE_START_IN_MILLIS, MINUTE_START_IN_MILLIS,
+                60000, null, MOCK_TIME_STAMP_IN_MILLIS)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StatisticsAggregator.getRange(0, MINUTE_START_IN_MILLIS,
+                60000, null, MOCK_TIME_STAMP_IN_MILLIS)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void add(long timestampInMillis, double amount) {
+        assertThat(StatisticsAggregator.addTransaction(new Transaction(timestampInMillis, amount), timestampInMillis))
+                .isTrue();
+    }
+}
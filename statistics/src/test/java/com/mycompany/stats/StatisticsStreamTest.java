@@ -0,0 +1,103 @@
+package com.mycompany.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatisticsStreamTest {
+
+    private final StatisticsStream stream = new StatisticsStream(new ObjectMapper(), 3, 2);
+
+    @Before
+    public void setup() {
+        stream.start();
+    }
+
+    @After
+    public void tearDown() {
+        stream.stop();
+    }
+
+    @Test
+    public void checkEverySubscriberGetsTheSameEvent() throws Exception {
+        RecordingEmitter first = new RecordingEmitter(null);
+        RecordingEmitter second = new RecordingEmitter(null);
+        stream.subscribe(first);
+        stream.subscribe(second);
+
+        stream.publish(new Statistics().addStatistics(2, 300.00, 100.00, 200.00));
+
+        first.await(1);
+        second.await(1);
+        assertThat(first.events.get(0)).isSameAs(second.events.get(0));
+        assertThat(new String((byte[]) first.events.get(0), StandardCharsets.UTF_8))
+                .startsWith("data:{\"sum\":300.0,").endsWith("}\n\n");
+    }
+
+    @Test
+    public void checkLateSubscriberGetsTheLatestEvent() throws Exception {
+        stream.publish(new Statistics());
+        RecordingEmitter emitter = new RecordingEmitter(null);
+        stream.subscribe(emitter);
+        emitter.await(1);
+    }
+
+    @Test
+    public void checkSlowSubscriberIsConflatedThenDropped() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(blocked);
+        RecordingEmitter fast = new RecordingEmitter(null);
+        stream.subscribe(slow);
+        stream.subscribe(fast);
+
+        // The first event blocks the slow subscriber, the next ones replace each other until it is dropped.
+        for (int i = 0; i < 5; i++) {
+            stream.publish(new Statistics());
+            fast.await(i + 1);
+        }
+        assertThat(stream.getSubscribers()).isEqualTo(1);
+        blocked.countDown();
+        assertThat(slow.events).hasSize(1);
+    }
+
+    private static final class RecordingEmitter extends ResponseBodyEmitter {
+        private final CountDownLatch blocked;
+        private final List<Object> events = new CopyOnWriteArrayList<>();
+
+        RecordingEmitter(CountDownLatch blocked) {
+            this.blocked = blocked;
+        }
+
+        @Override
+        public void send(Object object, MediaType mediaType) {
+            events.add(object);
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        // The tick of the stream may publish in between, when the test crosses a second boundary.
+        void await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(events.size()).isGreaterThanOrEqualTo(count);
+        }
+    }
+}
@@ -82,6 +82,15 @@ public class StatisticsTest {
         assertThat(statistics.getAverage()).isEqualTo(TEST_AMOUNT);
     }
 
+    @Test
+    public void checkMaxOfNegativeAmounts() {
+        statistics.addTransaction(new Transaction(TEST_TIMESTAMP, -TEST_AMOUNT));
+        statistics.addStatistics(2, -2 * TEST_SUM, -TEST_SUM, -TEST_SUM);
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getMax()).isEqualTo(-TEST_AMOUNT);
+        assertThat(statistics.getMin()).isEqualTo(-TEST_SUM);
+    }
+
     @Test
     public void checkMultiThreadSyncAddingMultipleTransactions() throws InterruptedException {
         ExecutorService executorService = Executors.newCachedThreadPool();
@@ -0,0 +1,101 @@
+package com.mycompany.stats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class StatisticsWindowTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+
+    private final StatisticsWindow window;
+    private final long now;
+    private final long oldest;
+
+    public StatisticsWindowTest(long bucketMillis, int buckets) {
+        window = new StatisticsWindow(bucketMillis, buckets);
+        now = MOCK_TIME_STAMP_IN_MILLIS + bucketMillis / 2;
+        oldest = window.timestampOf(window.minTickOf(window.tickOf(now)));
+    }
+
+    @Parameterized.Parameters(name = "{0}ms x {1}")
+    public static Collection<Object[]> windows() {
+        return Arrays.asList(new Object[][]{{1000, 60}, {100, 600}, {1000, 300}, {250, 8}, {60000, 5}});
+    }
+
+    @Before
+    public void setup() {
+        StatisticsAggregator.initialize(window, now);
+    }
+
+    @After
+    public void tearDown() {
+        StatisticsAggregator.initialize(StatisticsWindow.DEFAULT, MOCK_TIME_STAMP_IN_MILLIS);
+    }
+
+    @Test
+    public void checkMemoryScalesWithThePowerOfTwoAboveTheBuckets() {
+        assertThat(Integer.bitCount(window.getSize())).isEqualTo(1);
+        assertThat(window.getSize()).isBetween(window.getBuckets(), window.getBuckets() * 2 - 1);
+        assertThat(StatisticsAggregator.getRegionBytes(window))
+                .isEqualTo(StatisticsAggregator.getStripes() * window.getSize() * StatisticsBuckets.BYTES_PER_BUCKET);
+        assertThat(StatisticsAggregator.getStatistics()).hasSize(window.getBuckets());
+        assertThat(StatisticsAggregator.getStatistics(now)).hasSize(window.getSize());
+    }
+
+    @Test
+    public void checkTheEdgeOfTheWindowMovesByABucket() {
+        assertThat(StatisticsAggregator.addTransaction(new Transaction(oldest, 100.00), now)).isTrue();
+        assertThat(StatisticsAggregator.addTransaction(new Transaction(oldest - 1, 100.00), now)).isFalse();
+        assertThat(StatisticsAggregator.addTransaction(new Transaction(now + window.getBucketMillis(), 100.00), now))
+                .isFalse();
+        assertThat(StatisticsAggregator.addTransaction(new Transaction(now, 200.00), now)).isTrue();
+
+        assertThat(StatisticsAggregator.getAggregatedStatistics(now).getCount()).isEqualTo(2);
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(now + window.getBucketMillis());
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getMin()).isEqualTo(200.00);
+    }
+
+    @Test
+    public void checkBatchesFollowTheWindow() {
+        TransactionBatch batch = new TransactionBatch(now);
+        batch.addTransaction(oldest, 100.00);
+        batch.addTransaction(oldest - 1, 100.00);
+        batch.addTransaction(now, 200.00);
+        assertThat(StatisticsAggregator.addTransactions(batch)).isEqualTo(2);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(now).getSum()).isEqualTo(300.00);
+    }
+
+    @Test
+    public void checkTheLastBucketOnly() {
+        StatisticsAggregator.addTransaction(new Transaction(oldest, 100.00), now);
+        StatisticsAggregator.addTransaction(new Transaction(now, 200.00), now);
+
+        Statistics statistics = StatisticsAggregator.getAggregatedStatistics(now, window.getBucketMillis(), null);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getSum()).isEqualTo(200.00);
+        assertThat(StatisticsAggregator.getAggregatedStatistics(now, window.getLengthInMillis(), null).getCount())
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void checkExpiredBucketsAreRolledUp() {
+        StatisticsAggregator.addTransaction(new Transaction(oldest, 100.00), now);
+        StatisticsAggregator.addTransaction(new Transaction(now, 200.00), now);
+
+        long later = now + window.getLengthInMillis() + 60000;
+        long minute = oldest - oldest % 60000;
+        List<TimestampedStatistics> points = StatisticsAggregator.getRange(minute, now + 1, 60000, null, later);
+        assertThat(points.stream().mapToDouble(point -> point.getStatistics().getSum()).sum()).isEqualTo(300.00);
+    }
+}
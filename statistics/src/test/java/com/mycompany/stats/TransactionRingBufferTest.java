@@ -0,0 +1,70 @@
+package com.mycompany.stats;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TransactionRingBufferTest {
+
+    private static final long MOCK_TIME_STAMP_IN_MILLIS = 1515324450000L;
+    private static final int PRODUCERS = 8;
+    private static final int TRANSACTIONS_PER_PRODUCER = 100000;
+
+    @Test
+    public void shouldRejectCapacityWhichIsNotAPowerOfTwo() {
+        assertThatThrownBy(() -> new TransactionRingBuffer(100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldRejectPublishingWhenFullUntilDrained() {
+        TransactionRingBuffer ringBuffer = new TransactionRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(ringBuffer.tryPublish(MOCK_TIME_STAMP_IN_MILLIS, 100.00)).isTrue();
+        }
+        assertThat(ringBuffer.tryPublish(MOCK_TIME_STAMP_IN_MILLIS, 100.00)).isFalse();
+
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS);
+        assertThat(ringBuffer.drainTo(batch, 3)).isEqualTo(3);
+        assertThat(ringBuffer.tryPublish(MOCK_TIME_STAMP_IN_MILLIS, 100.00)).isTrue();
+        assertThat(ringBuffer.drainTo(batch, 10)).isEqualTo(2);
+        assertThat(ringBuffer.isEmpty()).isTrue();
+        assertThat(batch.getTransactions()).isEqualTo(5);
+    }
+
+    // Every transaction published by concurrent producers through a small ring is drained exactly once.
+    @Test
+    public void checkAllTransactionsAreDrainedWithConcurrentProducers() throws InterruptedException {
+        TransactionRingBuffer ringBuffer = new TransactionRingBuffer(1024);
+        ExecutorService executorService = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch done = new CountDownLatch(PRODUCERS);
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            executorService.submit(() -> {
+                for (int i = 0; i < TRANSACTIONS_PER_PRODUCER; i++) {
+                    while (!ringBuffer.tryPublish(MOCK_TIME_STAMP_IN_MILLIS + (i % 60) * 1000, (i % 100) + 1)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        TransactionBatch batch = new TransactionBatch(MOCK_TIME_STAMP_IN_MILLIS + 59000);
+        long drained = 0;
+        while (done.getCount() > 0 || !ringBuffer.isEmpty()) {
+            drained += ringBuffer.drainTo(batch, 256);
+        }
+        executorService.shutdown();
+
+        assertThat(drained).isEqualTo((long) PRODUCERS * TRANSACTIONS_PER_PRODUCER);
+        double sum = 0;
+        for (int index = 0; index < batch.size(); index++) {
+            sum += batch.getSum(index);
+        }
+        assertThat(sum).isEqualTo(PRODUCERS * (TRANSACTIONS_PER_PRODUCER / 100) * 5050.0);
+    }
+}